@@ -1,8 +1,8 @@
 package calculator.derivatives;
 
 import calculator.utility.CalculateUtil;
+import calculator.utility.Greeks;
 import calculator.utility.NewtonIterationParams;
-import flanagan.math.DeepCopy;
 import option.BaseSingleOption;
 import static calculator.utility.CalculatorError.*;
 
@@ -14,6 +14,11 @@ public abstract class BaseSingleOptionCalculator extends BaseCalculator {
 
     private boolean useVolatilitySurface = false;
 
+    /**
+     * calculateAll的结果
+     */
+    private Greeks greeks = new Greeks();
+
     public BaseSingleOptionCalculator() {
 
     }
@@ -30,6 +35,14 @@ public abstract class BaseSingleOptionCalculator extends BaseCalculator {
         this.option = option;
     }
 
+    public Greeks getGreeks() {
+        return greeks;
+    }
+
+    void setGreeks(Greeks greeks) {
+        this.greeks = greeks;
+    }
+
     public void enableVolSurface() {
         this.useVolatilitySurface = true;
     }
@@ -55,6 +68,53 @@ public abstract class BaseSingleOptionCalculator extends BaseCalculator {
      */
     public abstract void calculateImpliedVolatility();
 
+    /**
+     * 计算价格和全部Greeks, 结果存入greeks, result为价格;
+     * 默认逐个计算, 子类可以在一次计算中得到多个值;
+     */
+    public void calculateAll() {
+        if (useAnalyticGreeks()) {
+            resetCalculator();
+            Greeks allGreeks = option.analyticGreeks();
+            if (setAnalyticResult(allGreeks.getPrice())) {
+                setGreeks(allGreeks);
+            }
+            return;
+        }
+        Greeks allGreeks = new Greeks();
+        calculateDelta();
+        if (!isNormal()) {
+            return;
+        }
+        allGreeks.setDelta(getResult());
+        calculateGamma();
+        if (!isNormal()) {
+            return;
+        }
+        allGreeks.setGamma(getResult());
+        calculateVega();
+        if (!isNormal()) {
+            return;
+        }
+        allGreeks.setVega(getResult());
+        calculateTheta();
+        if (!isNormal()) {
+            return;
+        }
+        allGreeks.setTheta(getResult());
+        calculateRho();
+        if (!isNormal()) {
+            return;
+        }
+        allGreeks.setRho(getResult());
+        calculatePrice();
+        if (!isNormal()) {
+            return;
+        }
+        allGreeks.setPrice(getResult());
+        setGreeks(allGreeks);
+    }
+
     /**
      * 计算Delta;
      */
@@ -64,31 +124,39 @@ public abstract class BaseSingleOptionCalculator extends BaseCalculator {
             setError(UNSUPPORTED_METHOD);
             return;
         }
-
-        BaseSingleOption[] options = shiftUnderlyingPrice();
-        BaseSingleOption lowerOption = options[0];
-        BaseSingleOption upperOption = options[1];
-
-        setOption(lowerOption);
-        calculatePrice();
-        if (!isNormal()) {
+        if (useAnalyticGreeks()) {
+            setAnalyticResult(option.analyticGreeks().getDelta());
             return;
         }
-        double lowerPrice = getResult();
 
-        setOption(upperOption);
-        calculatePrice();
-        if (!isNormal()) {
-            return;
+        //扰动的计算会把option换成扰动后的期权, 结束时恢复原来的期权
+        BaseSingleOption original = option;
+        try {
+            BaseSingleOption[] options = shiftUnderlyingPrice();
+            BaseSingleOption lowerOption = options[0];
+            BaseSingleOption upperOption = options[1];
+
+            setOption(lowerOption);
+            calculatePrice();
+            if (!isNormal()) {
+                return;
+            }
+            double lowerPrice = getResult();
+
+            setOption(upperOption);
+            calculatePrice();
+            if (!isNormal()) {
+                return;
+            }
+            double upperPrice = getResult();
+            double lowerSpotPrice = lowerOption.getUnderlying().getSpotPrice();
+            double upperSpotPrice = upperOption.getUnderlying().getSpotPrice();
+            double delta = (upperPrice - lowerPrice) / (upperSpotPrice - lowerSpotPrice);
+            setResult(delta);
+            setError(NORMAL);
+        } finally {
+            setOption(original);
         }
-        double upperPrice = getResult();
-        //reset;
-        setOption(option);
-        double lowerSpotPrice = lowerOption.getUnderlying().getSpotPrice();
-        double upperSpotPrice = upperOption.getUnderlying().getSpotPrice();
-        double delta = (upperPrice - lowerPrice) / (upperSpotPrice - lowerSpotPrice);
-        setResult(delta);
-        setError(NORMAL);
     }
 
     /**
@@ -100,31 +168,40 @@ public abstract class BaseSingleOptionCalculator extends BaseCalculator {
             setError(UNSUPPORTED_METHOD);
             return;
         }
-
-        BaseSingleOption[] options = shiftVolatility();
-        BaseSingleOption lowerOption = options[0];
-        BaseSingleOption upperOption = options[1];
-
-        setOption(lowerOption);
-        calculatePrice();
-        if (!isNormal()) {
+        if (useAnalyticGreeks()) {
+            setAnalyticResult(option.analyticGreeks().getVega());
             return;
         }
-        double lowerPrice = getResult();
 
-        setOption(upperOption);
-        calculatePrice();
-        if (!isNormal()) {
-            return;
+        //扰动的计算会把option换成扰动后的期权, 结束时恢复原来的期权
+        BaseSingleOption original = option;
+        try {
+            BaseSingleOption[] options = shiftVolatility();
+            BaseSingleOption lowerOption = options[0];
+            BaseSingleOption upperOption = options[1];
+
+            setOption(lowerOption);
+            calculatePrice();
+            if (!isNormal()) {
+                return;
+            }
+            double lowerPrice = getResult();
+
+            setOption(upperOption);
+            calculatePrice();
+            if (!isNormal()) {
+                return;
+            }
+            double upperPrice = getResult();
+
+            double lowerVol = lowerOption.getVanillaOptionParams().getVolatility();
+            double upperVol = upperOption.getVanillaOptionParams().getVolatility();
+            double vega = (upperPrice - lowerPrice) / (upperVol - lowerVol) / 100;
+            setResult(vega);
+            setError(NORMAL);
+        } finally {
+            setOption(original);
         }
-        double upperPrice = getResult();
-
-        setOption(option);
-        double lowerVol = lowerOption.getVanillaOptionParams().getVolatility();
-        double upperVol = upperOption.getVanillaOptionParams().getVolatility();
-        double vega = (upperPrice - lowerPrice) / (upperVol - lowerVol) / 100;
-        setResult(vega);
-        setError(NORMAL);
     }
 
     /**
@@ -136,29 +213,38 @@ public abstract class BaseSingleOptionCalculator extends BaseCalculator {
             setError(UNSUPPORTED_METHOD);
             return;
         }
-        BaseSingleOption[] options = shiftTimeRemaining();
-        BaseSingleOption lowerOption = options[0];
-        BaseSingleOption upperOption = options[1];
-
-        setOption(lowerOption);
-        calculatePrice();
-        if (!isNormal()) {
+        if (useAnalyticGreeks()) {
+            setAnalyticResult(option.analyticGreeks().getTheta());
             return;
         }
-        double lowerPrice = getResult();
-
-        setOption(upperOption);
-        calculatePrice();
-        if (!isNormal()) {
-            return;
+        //扰动的计算会把option换成扰动后的期权, 结束时恢复原来的期权
+        BaseSingleOption original = option;
+        try {
+            BaseSingleOption[] options = shiftTimeRemaining();
+            BaseSingleOption lowerOption = options[0];
+            BaseSingleOption upperOption = options[1];
+
+            setOption(lowerOption);
+            calculatePrice();
+            if (!isNormal()) {
+                return;
+            }
+            double lowerPrice = getResult();
+
+            setOption(upperOption);
+            calculatePrice();
+            if (!isNormal()) {
+                return;
+            }
+            double price = getResult();
+            double lowerT = lowerOption.getVanillaOptionParams().getTimeRemaining();
+            double upperT = upperOption.getVanillaOptionParams().getTimeRemaining();
+            double theta = (lowerPrice - price) / (upperT - lowerT) / 365;
+            setResult(theta);
+            setError(NORMAL);
+        } finally {
+            setOption(original);
         }
-        double price = getResult();
-        setOption(option);
-        double lowerT = lowerOption.getVanillaOptionParams().getTimeRemaining();
-        double upperT = upperOption.getVanillaOptionParams().getTimeRemaining();
-        double theta = (lowerPrice - price) / (upperT - lowerT) / 365;
-        setResult(theta);
-        setError(NORMAL);
     }
 
     public  void calculateGamma() {
@@ -167,30 +253,38 @@ public abstract class BaseSingleOptionCalculator extends BaseCalculator {
             setError(UNSUPPORTED_METHOD);
             return;
         }
-        BaseSingleOption[] options = shiftUnderlyingPrice();
-        BaseSingleOption lowerOption = options[0];
-        BaseSingleOption upperOption = options[1];
-
-        setOption(lowerOption);
-        calculateDelta();
-        if (!isNormal()) {
+        if (useAnalyticGreeks()) {
+            setAnalyticResult(option.analyticGreeks().getGamma());
             return;
         }
-        double lowerDelta = getResult();
-
-        setOption(upperOption);
-        calculateDelta();
-        if (!isNormal()) {
-            return;
+        //扰动的计算会把option换成扰动后的期权, 结束时恢复原来的期权
+        BaseSingleOption original = option;
+        try {
+            BaseSingleOption[] options = shiftUnderlyingPrice();
+            BaseSingleOption lowerOption = options[0];
+            BaseSingleOption upperOption = options[1];
+
+            setOption(lowerOption);
+            calculateDelta();
+            if (!isNormal()) {
+                return;
+            }
+            double lowerDelta = getResult();
+
+            setOption(upperOption);
+            calculateDelta();
+            if (!isNormal()) {
+                return;
+            }
+            double upperDelta = getResult();
+            double lowerSpotPrice = lowerOption.getUnderlying().getSpotPrice();
+            double upperSpotPrice = upperOption.getUnderlying().getSpotPrice();
+            double gamma = (upperDelta - lowerDelta) / (upperSpotPrice - lowerSpotPrice);
+            setResult(gamma);
+            setError(NORMAL);
+        } finally {
+            setOption(original);
         }
-        double upperDelta = getResult();
-        //reset;
-        setOption(option);
-        double lowerSpotPrice = lowerOption.getUnderlying().getSpotPrice();
-        double upperSpotPrice = upperOption.getUnderlying().getSpotPrice();
-        double gamma = (upperDelta - lowerDelta) / (upperSpotPrice - lowerSpotPrice);
-        setResult(gamma);
-        setError(NORMAL);
     }
 
     /**
@@ -202,40 +296,69 @@ public abstract class BaseSingleOptionCalculator extends BaseCalculator {
             setError(UNSUPPORTED_METHOD);
             return;
         }
-
-        BaseSingleOption[] options = shiftInterestRate();
-        BaseSingleOption lowerOption = options[0];
-        BaseSingleOption upperOption = options[1];
-
-        setOption(lowerOption);
-        calculatePrice();
-        if (!isNormal()) {
+        if (useAnalyticGreeks()) {
+            setAnalyticResult(option.analyticGreeks().getRho());
             return;
         }
-        double lowerPrice = getResult();
 
-        setOption(upperOption);
-        calculatePrice();
-        if (!isNormal()) {
-            return;
+        //扰动的计算会把option换成扰动后的期权, 结束时恢复原来的期权
+        BaseSingleOption original = option;
+        try {
+            BaseSingleOption[] options = shiftInterestRate();
+            BaseSingleOption lowerOption = options[0];
+            BaseSingleOption upperOption = options[1];
+
+            setOption(lowerOption);
+            calculatePrice();
+            if (!isNormal()) {
+                return;
+            }
+            double lowerPrice = getResult();
+
+            setOption(upperOption);
+            calculatePrice();
+            if (!isNormal()) {
+                return;
+            }
+            double upperPrice = getResult();
+
+            double lowerRate = lowerOption.getUnderlying().getRiskFreeRate();
+            double upperRate = upperOption.getUnderlying().getRiskFreeRate();
+            double rho = (upperPrice - lowerPrice) / (upperRate - lowerRate) / 10000;
+            setResult(rho);
+            setError(NORMAL);
+        } finally {
+            setOption(original);
         }
-        double upperPrice = getResult();
+    }
 
-        setOption(option);
-        double lowerRate = lowerOption.getUnderlying().getRiskFreeRate();
-        double upperRate = upperOption.getUnderlying().getRiskFreeRate();
-        double rho = (upperPrice - lowerPrice) / (upperRate - lowerRate) / 10000;
-        setResult(rho);
+    /**
+     * 期权有解析解的Greeks时是否直接使用, 默认不使用; 用波动率曲面时扰动后的波动率要从曲面重新读取, 不能用解析解;
+     */
+    boolean useAnalyticGreeks() {
+        return false;
+    }
+
+    /**
+     * @return 结果是否正常
+     */
+    private boolean setAnalyticResult(double value) {
+        if (Double.isNaN(value)) {
+            setError(CALCULATE_NAN);
+            return false;
+        }
+        setResult(value);
         setError(NORMAL);
+        return true;
     }
 
-    private boolean canUseVolatilitySurface() {
+    boolean canUseVolatilitySurface() {
         return useVolatilitySurface && option.getVolatilitySurface().isValidSurface();
     }
 
     BaseSingleOption[] shiftUnderlyingPrice() {
-        BaseSingleOption lowerOption = (BaseSingleOption) DeepCopy.copy(option);
-        BaseSingleOption upperOption = (BaseSingleOption) DeepCopy.copy(option);
+        BaseSingleOption lowerOption = option.scenarioCopy();
+        BaseSingleOption upperOption = option.scenarioCopy();
 
         double precision = option.getPrecision().getUnderlyingPricePrecision();
         double s = option.getUnderlying().getSpotPrice();
@@ -260,8 +383,8 @@ public abstract class BaseSingleOptionCalculator extends BaseCalculator {
     }
 
     BaseSingleOption[] shiftVolatility() {
-        BaseSingleOption lowerOption = (BaseSingleOption) DeepCopy.copy(option);
-        BaseSingleOption upperOption = (BaseSingleOption) DeepCopy.copy(option);
+        BaseSingleOption lowerOption = option.scenarioCopy();
+        BaseSingleOption upperOption = option.scenarioCopy();
 
         double precision = option.getPrecision().getVolatilityPrecision();
         double vol = option.getVanillaOptionParams().getVolatility();
@@ -274,8 +397,8 @@ public abstract class BaseSingleOptionCalculator extends BaseCalculator {
     }
 
     BaseSingleOption[] shiftTimeRemaining() {
-        BaseSingleOption lowerOption = (BaseSingleOption) DeepCopy.copy(option);
-        BaseSingleOption upperOption = (BaseSingleOption) DeepCopy.copy(option);
+        BaseSingleOption lowerOption = option.scenarioCopy();
+        BaseSingleOption upperOption = option.scenarioCopy();
 
         double precision = option.getPrecision().getTimeRemainingPrecision();
         double t = option.getVanillaOptionParams().getTimeRemaining();
@@ -294,8 +417,8 @@ public abstract class BaseSingleOptionCalculator extends BaseCalculator {
     }
 
     BaseSingleOption[] shiftInterestRate() {
-        BaseSingleOption lowerOption = (BaseSingleOption) DeepCopy.copy(option);
-        BaseSingleOption upperOption = (BaseSingleOption) DeepCopy.copy(option);
+        BaseSingleOption lowerOption = option.scenarioCopy();
+        BaseSingleOption upperOption = option.scenarioCopy();
 
         double precision = option.getPrecision().getInterestRatePrecision();
         double r = option.getUnderlying().getRiskFreeRate();
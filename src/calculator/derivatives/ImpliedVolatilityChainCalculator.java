@@ -0,0 +1,213 @@
+package calculator.derivatives;
+
+import calculator.utility.ImpliedVolatility;
+import underlying.BaseUnderlying;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static calculator.utility.CalculatorError.*;
+
+/**
+ * 期权链的隐含波动率: 同一标的, 同一到期时间的一组欧式期权, 按bsm批量求解;
+ * 输入和输出都是基本类型数组, 不创建期权对象;
+ * 按chunkSize分块, 块内按顺序计算, 每个行权价用前一个成功求解的隐含波动率作迭代初值, 行权价有序时初值最好;
+ * 每个结果都检查范围并重新定价, 没有通过时再用求解器自己的初值重新求解, 失败的结果不作为初值;
+ * 块之间互不依赖, 可以并行; 分块和线程数无关, 所以结果和线程数无关;
+ *
+ * @author liangcy
+ */
+public class ImpliedVolatilityChainCalculator {
+    /**
+     * 合理的波动率上限, 超过时认为求解失败;
+     */
+    private static final double MAX_VOLATILITY = 10;
+    /**
+     * 重新定价和报价的相对误差上限;
+     */
+    private static final double REPRICE_TOLERANCE = 1e-6;
+
+    private BaseUnderlying underlying;
+
+    private double timeRemaining;
+    /**
+     * 并行线程数, 为1时在当前线程计算;
+     */
+    private int parallelism = 1;
+    /**
+     * 每块的期权个数;
+     */
+    private int chunkSize = 256;
+    /**
+     * 外部提供的线程池, 不为null时忽略parallelism;
+     */
+    private ExecutorService executorService = null;
+    /**
+     * 隐含波动率, 计算失败时为NaN;
+     */
+    private double[] volatilities = new double[0];
+    /**
+     * 每个期权的CalculatorError序号;
+     */
+    private int[] errors = new int[0];
+
+    public ImpliedVolatilityChainCalculator() {
+    }
+
+    public ImpliedVolatilityChainCalculator(BaseUnderlying underlying, double timeRemaining) {
+        this.underlying = underlying;
+        this.timeRemaining = timeRemaining;
+    }
+
+    public BaseUnderlying getUnderlying() {
+        return underlying;
+    }
+
+    public void setUnderlying(BaseUnderlying underlying) {
+        this.underlying = underlying;
+    }
+
+    public double getTimeRemaining() {
+        return timeRemaining;
+    }
+
+    public void setTimeRemaining(double timeRemaining) {
+        this.timeRemaining = timeRemaining;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    public double[] getVolatilities() {
+        return volatilities;
+    }
+
+    public int[] getErrors() {
+        return errors;
+    }
+
+    /**
+     * 结果存入volatilities和errors, 长度和输入一致;
+     *
+     * @param strikes 行权价
+     * @param prices  期权价格
+     * @param isCall  是否看涨
+     */
+    public void calculateImpliedVolatility(double[] strikes, double[] prices, boolean[] isCall) {
+        int n = strikes.length;
+        if (prices.length != n || isCall.length != n) {
+            throw new IllegalArgumentException("strikes, prices and isCall should have the same length");
+        }
+        volatilities = new double[n];
+        errors = new int[n];
+        double t = timeRemaining;
+        double discount = Math.exp(-underlying.getRiskFreeRate() * t);
+        double forward = underlying.getFutureValue(t);
+        int numOfChunks = (n + chunkSize - 1) / chunkSize;
+        if (numOfChunks <= 1 || (executorService == null && parallelism <= 1)) {
+            calculateChunk(strikes, prices, isCall, forward, discount, 0, n);
+            return;
+        }
+        List<Callable<Void>> tasks = new ArrayList<>(numOfChunks);
+        for (int i = 0; i < numOfChunks; i++) {
+            int from = i * chunkSize;
+            int to = Math.min(n, from + chunkSize);
+            tasks.add(() -> {
+                calculateChunk(strikes, prices, isCall, forward, discount, from, to);
+                return null;
+            });
+        }
+        try {
+            invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail();
+        } catch (ExecutionException e) {
+            fail();
+        }
+    }
+
+    private void calculateChunk(double[] strikes, double[] prices, boolean[] isCall,
+                                double forward, double discount, int from, int to) {
+        double initialVol = Double.NaN;
+        for (int i = from; i < to; i++) {
+            double vol = ImpliedVolatility.black(prices[i], forward, strikes[i], timeRemaining, discount,
+                    isCall[i], initialVol);
+            //从相邻行权价出发的结果没有通过检查时, 改用求解器自己的初值
+            if (!isValid(vol, prices[i], forward, strikes[i], discount, isCall[i]) && !Double.isNaN(initialVol)) {
+                vol = ImpliedVolatility.black(prices[i], forward, strikes[i], timeRemaining, discount, isCall[i]);
+            }
+            if (isValid(vol, prices[i], forward, strikes[i], discount, isCall[i])) {
+                volatilities[i] = vol;
+                errors[i] = NORMAL.getIndex();
+                //只用通过检查的结果作下一个初值
+                initialVol = vol > 0 ? vol : Double.NaN;
+            } else {
+                volatilities[i] = Double.NaN;
+                errors[i] = CALCULATE_NAN.getIndex();
+            }
+        }
+    }
+
+    /**
+     * 结果是有限值, 在合理范围内, 并且重新定价能还原报价时才认为求解成功;
+     */
+    private boolean isValid(double vol, double price, double forward, double strike, double discount,
+                            boolean isCall) {
+        if (!(vol >= 0 && vol <= MAX_VOLATILITY)) {
+            return false;
+        }
+        double modelPrice = ImpliedVolatility.blackPrice(forward, strike, vol, timeRemaining, discount, isCall);
+        return Math.abs(modelPrice - price) <= REPRICE_TOLERANCE * price;
+    }
+
+    private void fail() {
+        for (int i = 0; i < volatilities.length; i++) {
+            volatilities[i] = Double.NaN;
+            errors[i] = CALCULATE_FAILED.getIndex();
+        }
+    }
+
+    private void invokeAll(List<Callable<Void>> tasks) throws InterruptedException, ExecutionException {
+        if (executorService != null) {
+            for (Future<Void> future : executorService.invokeAll(tasks)) {
+                future.get();
+            }
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
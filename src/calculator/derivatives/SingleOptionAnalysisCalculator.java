@@ -4,8 +4,7 @@ import calculator.utility.NewtonIterationParams;
 import flanagan.roots.RealRoot;
 import flanagan.roots.RealRootDerivFunction;
 import option.BaseSingleOption;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.util.function.ToDoubleFunction;
 import static calculator.utility.CalculatorError.*;
 
 /**
@@ -57,39 +56,24 @@ public class SingleOptionAnalysisCalculator extends BaseSingleOptionCalculator {
     }
 
     /**
-     * @return 获取对象的方法，先检查自身的方法，再检查继承来的方法
-     * @throws NoSuchMethodException
+     * @return 定价函数，先检查自身的方法，再检查继承来的方法; 每个(期权类, 方法名)只解析一次; 方法不存在时为null
      */
-    private Method getMethod() throws NoSuchMethodException {
-        Class<?> c = option.getClass();
-        String methodName = option.getVanillaOptionParams().getMethodName();
-        try {
-            return c.getDeclaredMethod(methodName);
-        } catch (NoSuchMethodException e) {
-            return c.getMethod(methodName);
-        }
+    private ToDoubleFunction<BaseSingleOption> getPricer() {
+        return SingleOptionPricerRegistry.getPricer(option.getClass(),
+                option.getVanillaOptionParams().getMethodName());
     }
 
     @Override
     public boolean hasMethod() {
-        try {
-            getMethod();
-            return true;
-        } catch (NoSuchMethodException e) {
-            return false;
-        }
+        return getPricer() != null;
     }
 
     /**
-     * 根据方法来获取结果。
-     *
-     * @param method 方法
-     * @return 根据方法计算的价格。
-     * @throws InvocationTargetException
-     * @throws IllegalAccessException
+     * bsm方法的Greeks直接用解析解;
      */
-    private double getPrice(Method method) throws InvocationTargetException, IllegalAccessException {
-        return (double) method.invoke(option);
+    @Override
+    boolean useAnalyticGreeks() {
+        return option.hasAnalyticGreeks() && !canUseVolatilitySurface();
     }
 
     private double getInitialVol() {
@@ -102,11 +86,23 @@ public class SingleOptionAnalysisCalculator extends BaseSingleOptionCalculator {
 
     /**
      * 牛顿二分法计算隐含波动率, 下限0.005, 上限3.000
+     * bsm方法的欧式期权直接求解, 没有上下限;
      * 这里会把隐含波动率赋值给volatility。
      */
     @Override
     public void calculateImpliedVolatility() {
         resetCalculator();
+        if (option.hasAnalyticImpliedVolatility()) {
+            double vol = option.analyticImpliedVolatility(option.getVanillaOptionParams().getTargetPrice());
+            if (Double.isNaN(vol)) {
+                setError(CALCULATE_NAN);
+                return;
+            }
+            option.getVanillaOptionParams().setVolatility(vol);
+            setResult(vol);
+            setError(NORMAL);
+            return;
+        }
         ImpliedVolFunction function = new ImpliedVolFunction();
         function.setOption(option);
         RealRoot realRoot = new RealRoot();
@@ -150,23 +146,21 @@ public class SingleOptionAnalysisCalculator extends BaseSingleOptionCalculator {
     public void calculatePrice() {
         resetCalculator();
 
-        Method method;
-        try {
-            method = getMethod();
-        } catch (NoSuchMethodException e) {
+        ToDoubleFunction<BaseSingleOption> pricer = getPricer();
+        if (pricer == null) {
             setError(NOT_FOUND_METHOD);
             return;
         }
 
         try {
-            double price = getPrice(method);
+            double price = pricer.applyAsDouble(option);
             if (Double.isNaN(price)) {
                 setError(CALCULATE_NAN);
                 return;
             }
             setResult(price);
             setError(NORMAL);
-        } catch (IllegalAccessException | InvocationTargetException e) {
+        } catch (RuntimeException e) {
             setError(CALCULATE_FAILED);
         }
     }
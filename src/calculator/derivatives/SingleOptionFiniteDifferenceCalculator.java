@@ -3,7 +3,10 @@ package calculator.derivatives;
 import calculator.utility.CalculateUtil;
 import calculator.utility.CalculatorError;
 import calculator.utility.FiniteDifference;
+import calculator.utility.Greeks;
+import calculator.utility.TridiagonalMatrix;
 import flanagan.math.Matrix;
+import option.BaseSingleOption;
 import option.EuropeanOption;
 import java.io.Serializable;
 
@@ -14,6 +17,29 @@ import java.io.Serializable;
 public class SingleOptionFiniteDifferenceCalculator extends BaseSingleOptionCalculator implements Serializable {
 
     private FiniteDifference finiteDifference = new FiniteDifference();
+    /**
+     * 最近一次递推得到的每个时间点的提前行权边界, 和finiteDifference的时间点一一对应;
+     */
+    private double[] earlyExerciseBoundary;
+    /**
+     * 最近一次计算中PSOR迭代是否每一步都收敛;
+     */
+    private boolean isConverged = true;
+
+    public FiniteDifference getFiniteDifference() {
+        return finiteDifference;
+    }
+
+    public void setFiniteDifference(FiniteDifference finiteDifference) {
+        this.finiteDifference = finiteDifference;
+    }
+
+    /**
+     * @return 每个时间点的提前行权边界, 没有提前行权的时间点为NaN; 不能提前行权的期权为null;
+     */
+    public double[] getEarlyExerciseBoundary() {
+        return earlyExerciseBoundary;
+    }
 
     @Override
     public boolean hasMethod() {
@@ -27,36 +53,168 @@ public class SingleOptionFiniteDifferenceCalculator extends BaseSingleOptionCalc
             setError(CalculatorError.UNSUPPORTED_METHOD);
             return;
         }
-        double result = optionPriceMatrix()[0][finiteDifference.getIndexOfInitialSpot()];
+        double result = optionPriceSnapshots(0)[0][finiteDifference.getIndexOfInitialSpot()];
         setResult(result);
-        setError(CalculatorError.NORMAL);
+        setError(finishedError());
     }
 
     /**
-     * @return n * m matrix;第一行是时刻为0时期权价格向量, 最后一行是时刻为t时期权价格向量;
-     * 期权价格向量根据标的资产价格从小到大排列;
+     * 从到期日向前递推, 只保留相邻两个时间层, 内存为O(m), 不随时间点个数增长;
+     * 可以提前行权的期权每一步求解线性互补问题, 同时记录每个时间点的提前行权边界;
+     *
+     * @param timeIndexes 需要保存的时间层下标, 0是时刻为0, n-1是时刻为t;
+     * @return 和timeIndexes一一对应的期权价格向量, 根据标的资产价格从小到大排列;
      */
-    private double[][] optionPriceMatrix() {
+    public double[][] optionPriceSnapshots(int... timeIndexes) {
+        isConverged = true;
         finiteDifference.generateFiniteDifferencePoints(option);
+        FiniteDifferenceSystem system = new FiniteDifferenceSystem(finiteDifference, option);
+        return backwardInduction(system, option.finiteDifferencePrice(finiteDifference.getPricePoints()),
+                option.isEarlyExercise(), timeIndexes);
+    }
+
+    /**
+     * 同一个标的资产, 波动率和到期时间, 不同执行价的期权共用一套网格和系数矩阵分解, 只有到期收益不同;
+     * 非均匀网格以spot为中心; 提前行权边界为最后一个执行价的结果;
+     *
+     * @param strikes 执行价
+     * @return 和strikes一一对应的期权价格
+     */
+    public double[] calculateStrikePrices(double[] strikes) {
+        resetCalculator();
+        if (!option.hasFiniteDifferenceMethod()) {
+            setError(CalculatorError.UNSUPPORTED_METHOD);
+            return null;
+        }
+        isConverged = true;
+        finiteDifference.generateFiniteDifferencePoints(option, option.getUnderlying().getSpotPrice());
+        FiniteDifferenceSystem system = new FiniteDifferenceSystem(finiteDifference, option);
+        BaseSingleOption strikeOption = option.scenarioCopy();
+        double[] prices = new double[strikes.length];
+        for (int j = 0; j < strikes.length; j++) {
+            strikeOption.getVanillaOptionParams().setStrikePrice(strikes[j]);
+            double[] exercisePrice = strikeOption.finiteDifferencePrice(finiteDifference.getPricePoints());
+            prices[j] = backwardInduction(system, exercisePrice, strikeOption.isEarlyExercise(), 0)[0]
+                    [finiteDifference.getIndexOfInitialSpot()];
+        }
+        setError(finishedError());
+        return prices;
+    }
+
+    /**
+     * @param system          差分系数矩阵
+     * @param exercisePrice   行权时的期权价格
+     * @param isEarlyExercise 是否可以提前行权
+     * @param timeIndexes     需要保存的时间层下标
+     * @return 和timeIndexes一一对应的期权价格向量
+     */
+    private double[][] backwardInduction(FiniteDifferenceSystem system, double[] exercisePrice,
+                                         boolean isEarlyExercise, int... timeIndexes) {
         int n = finiteDifference.getNumOfTimePoints();
-        double[][] result = new double[n][];
-        //记录行权时的期权价格;
-        double[] exercisePrice = option.finiteDifferencePrice(finiteDifference.getPricePoints());
-        //初始化矩阵最后一行;
-        result[n - 1] = exercisePrice;
-        //要把option price转成列矩阵;
-        Matrix optionPriceMat;
-        //对矩阵系数直接求逆;
-        Matrix params = finiteDifference.paramsMatrix(option).inverse();
-        //递推求解option price矩阵;
-        for (int i = 1; i < n; i++) {
-            optionPriceMat = CalculateUtil.generateOneColMatrix(result[n - i]);
-            result[n - i - 1] = params.times(optionPriceMat).getColumnCopy(0);
-            if (option.isEarlyExercise()) {
-                result[n - i - 1] = CalculateUtil.maxVector(result[n - i - 1], exercisePrice);
+        int m = exercisePrice.length;
+        double[][] snapshots = new double[timeIndexes.length][];
+        double[] current = exercisePrice.clone();
+        double[] previous = new double[m];
+        double[] rightHandSide = new double[m];
+        saveSnapshots(snapshots, timeIndexes, n - 1, current);
+        earlyExerciseBoundary = null;
+        if (isEarlyExercise) {
+            earlyExerciseBoundary = new double[n];
+            earlyExerciseBoundary[n - 1] = earlyExerciseBoundary(current, exercisePrice);
+        }
+        //行权区域在低价一端(如看跌期权)还是高价一端;
+        boolean isExerciseAtLowerEnd = exercisePrice[0] > exercisePrice[m - 1];
+        //递推求解期权价格;
+        double[] swap;
+        for (int i = n - 2; i >= 0; i--) {
+            if (n - 2 - i < system.numOfStartUpSteps) {
+                //Rannacher平滑: 用两个隐式半步代替一个Crank-Nicolson步;
+                solve(system.startUpParams, system.inverseStartUpParams, current, exercisePrice, previous,
+                        isEarlyExercise, isExerciseAtLowerEnd);
+                System.arraycopy(previous, 0, rightHandSide, 0, m);
+                solve(system.startUpParams, system.inverseStartUpParams, rightHandSide, exercisePrice, previous,
+                        isEarlyExercise, isExerciseAtLowerEnd);
+            } else if (system.isImplicit) {
+                solve(system.params, system.inverseParams, current, exercisePrice, previous,
+                        isEarlyExercise, isExerciseAtLowerEnd);
+            } else {
+                system.explicitParams.multiply(current, rightHandSide);
+                solve(system.params, system.inverseParams, rightHandSide, exercisePrice, previous,
+                        isEarlyExercise, isExerciseAtLowerEnd);
+            }
+            if (earlyExerciseBoundary != null) {
+                earlyExerciseBoundary[i] = earlyExerciseBoundary(previous, exercisePrice);
+            }
+            swap = current;
+            current = previous;
+            previous = swap;
+            saveSnapshots(snapshots, timeIndexes, i, current);
+        }
+        return snapshots;
+    }
+
+    /**
+     * 求解一个时间步; 不能提前行权时求解 M * x = d, 否则根据finiteDifference的设置求解线性互补问题;
+     * 如果给了稠密的逆矩阵就用逆矩阵相乘, 再取最大值;
+     *
+     * @param d 右端向量, 不能和x是同一个数组
+     */
+    private void solve(TridiagonalMatrix params, Matrix inverseParams, double[] d, double[] exercisePrice,
+                       double[] x, boolean isEarlyExercise, boolean isExerciseAtLowerEnd) {
+        String method = finiteDifference.getEarlyExerciseMethod();
+        if (inverseParams != null) {
+            double[] y = inverseParams.times(CalculateUtil.generateOneColMatrix(d)).getColumnCopy(0);
+            System.arraycopy(y, 0, x, 0, y.length);
+        } else if (!isEarlyExercise || FiniteDifference.EARLY_EXERCISE_PROJECTION.equals(method)) {
+            params.solve(d, x);
+        } else if (FiniteDifference.EARLY_EXERCISE_PSOR.equals(method)) {
+            int iterations = params.solveWithLowerBoundBySor(d, exercisePrice, x, finiteDifference.getPsorOmega(),
+                    finiteDifference.getPsorTolerance(), finiteDifference.getPsorMaxIterations());
+            if (iterations < 0) {
+                isConverged = false;
+            }
+            return;
+        } else {
+            params.solveWithLowerBound(d, exercisePrice, x, isExerciseAtLowerEnd);
+            return;
+        }
+        if (isEarlyExercise) {
+            CalculateUtil.maxVector(x, exercisePrice, x);
+        }
+    }
+
+    /**
+     * @return PSOR迭代都收敛时为NORMAL, 否则为REACH_MAX_ITERATION, 结果仍然是最后一次迭代的值;
+     */
+    private CalculatorError finishedError() {
+        return isConverged ? CalculatorError.NORMAL : CalculatorError.REACH_MAX_ITERATION;
+    }
+
+    /**
+     * @return 提前行权区域和持有区域交界处的标的资产价格, 没有提前行权时为NaN;
+     */
+    private double earlyExerciseBoundary(double[] optionPrice, double[] exercisePrice) {
+        double[] underlyingPriceList = finiteDifference.getPricePoints();
+        int m = optionPrice.length;
+        double boundary = Double.NaN;
+        if (exercisePrice[0] > exercisePrice[m - 1]) {
+            for (int j = 0; j < m && optionPrice[j] <= exercisePrice[j] && exercisePrice[j] > 0; j++) {
+                boundary = underlyingPriceList[j];
+            }
+        } else {
+            for (int j = m - 1; j >= 0 && optionPrice[j] <= exercisePrice[j] && exercisePrice[j] > 0; j--) {
+                boundary = underlyingPriceList[j];
+            }
+        }
+        return boundary;
+    }
+
+    private void saveSnapshots(double[][] snapshots, int[] timeIndexes, int timeIndex, double[] optionPrice) {
+        for (int j = 0; j < timeIndexes.length; j++) {
+            if (timeIndexes[j] == timeIndex) {
+                snapshots[j] = optionPrice.clone();
             }
         }
-        return result;
     }
 
     @Override
@@ -72,15 +230,8 @@ public class SingleOptionFiniteDifferenceCalculator extends BaseSingleOptionCalc
             setError(CalculatorError.UNSUPPORTED_METHOD);
             return;
         }
-        int upperIndex = finiteDifference.getIndexOfInitialSpot() + 1;
-        int lowerIndex = finiteDifference.getIndexOfInitialSpot() - 1;
-        double[] optionPriceList = optionPriceMatrix()[0];
-        double[] underlyingPriceList = finiteDifference.getPricePoints();
-
-        double delta = (optionPriceList[upperIndex] - optionPriceList[lowerIndex]) /
-                (underlyingPriceList[upperIndex] - underlyingPriceList[lowerIndex]);
-        setResult(delta);
-        setError(CalculatorError.NORMAL);
+        setResult(delta(optionPriceSnapshots(0)[0]));
+        setError(finishedError());
     }
 
     @Override
@@ -90,12 +241,9 @@ public class SingleOptionFiniteDifferenceCalculator extends BaseSingleOptionCalc
             setError(CalculatorError.UNSUPPORTED_METHOD);
             return;
         }
-        double priceT0 = optionPriceMatrix()[0][finiteDifference.getIndexOfInitialSpot()];
-        double priceT1 = optionPriceMatrix()[1][finiteDifference.getIndexOfInitialSpot()];
-
-        double theta = (priceT1 - priceT0) / finiteDifference.getDiffTime() / 365;
-        setResult(theta);
-        setError(CalculatorError.NORMAL);
+        double[][] optionPriceList = optionPriceSnapshots(0, 1);
+        setResult(theta(optionPriceList[0], optionPriceList[1]));
+        setError(finishedError());
     }
 
     @Override
@@ -105,25 +253,71 @@ public class SingleOptionFiniteDifferenceCalculator extends BaseSingleOptionCalc
             setError(CalculatorError.UNSUPPORTED_METHOD);
             return;
         }
-        int upperIndex1 = finiteDifference.getIndexOfInitialSpot() + 1;
-        int upperIndex2 = finiteDifference.getIndexOfInitialSpot() + 2;
-        int lowerIndex1 = finiteDifference.getIndexOfInitialSpot() - 1;
-        int lowerIndex2 = finiteDifference.getIndexOfInitialSpot() - 2;
+        setResult(gamma(optionPriceSnapshots(0)[0]));
+        setError(finishedError());
+    }
+
+    /**
+     * 一次递推同时计算价格, delta, gamma和theta;
+     * vega和rho不能从网格得到, 为NaN;
+     */
+    @Override
+    public void calculateAll() {
+        resetCalculator();
+        if (!option.hasFiniteDifferenceMethod()) {
+            setError(CalculatorError.UNSUPPORTED_METHOD);
+            return;
+        }
+        double[][] optionPriceList = optionPriceSnapshots(0, 1);
+        Greeks allGreeks = new Greeks();
+        allGreeks.setPrice(optionPriceList[0][finiteDifference.getIndexOfInitialSpot()]);
+        allGreeks.setDelta(delta(optionPriceList[0]));
+        allGreeks.setGamma(gamma(optionPriceList[0]));
+        allGreeks.setTheta(theta(optionPriceList[0], optionPriceList[1]));
+        setGreeks(allGreeks);
+        setResult(allGreeks.getPrice());
+        setError(finishedError());
+    }
+
+    /**
+     * @param optionPriceList 时刻为0的期权价格向量
+     * @return delta
+     */
+    private double delta(double[] optionPriceList) {
         int index = finiteDifference.getIndexOfInitialSpot();
-        double[] optionPriceList = optionPriceMatrix()[0];
         double[] underlyingPriceList = finiteDifference.getPricePoints();
+        double[] weights = new double[3];
+        FiniteDifference.firstDerivativeWeights(underlyingPriceList[index] - underlyingPriceList[index - 1],
+                underlyingPriceList[index + 1] - underlyingPriceList[index], weights);
 
-        double upperDelta = (optionPriceList[upperIndex2] - optionPriceList[index]) /
-                (underlyingPriceList[upperIndex2] - underlyingPriceList[index]);
+        return weights[0] * optionPriceList[index - 1] + weights[1] * optionPriceList[index] +
+                weights[2] * optionPriceList[index + 1];
+    }
 
-        double lowerDelta = (optionPriceList[index] - optionPriceList[lowerIndex2]) /
-                (underlyingPriceList[index] - underlyingPriceList[lowerIndex2]);
+    /**
+     * @param optionPriceList 时刻为0的期权价格向量
+     * @return gamma
+     */
+    private double gamma(double[] optionPriceList) {
+        int index = finiteDifference.getIndexOfInitialSpot();
+        double[] underlyingPriceList = finiteDifference.getPricePoints();
+        double[] weights = new double[3];
+        FiniteDifference.secondDerivativeWeights(underlyingPriceList[index] - underlyingPriceList[index - 1],
+                underlyingPriceList[index + 1] - underlyingPriceList[index], weights);
 
-        double gamma = (upperDelta - lowerDelta) /
-                (underlyingPriceList[upperIndex1] - underlyingPriceList[lowerIndex1]);
+        return weights[0] * optionPriceList[index - 1] + weights[1] * optionPriceList[index] +
+                weights[2] * optionPriceList[index + 1];
+    }
 
-        setResult(gamma);
-        setError(CalculatorError.NORMAL);
+    /**
+     * @param optionPriceListT0 时刻为0的期权价格向量
+     * @param optionPriceListT1 下一个时刻的期权价格向量
+     * @return 1天的theta
+     */
+    private double theta(double[] optionPriceListT0, double[] optionPriceListT1) {
+        double priceT0 = optionPriceListT0[finiteDifference.getIndexOfInitialSpot()];
+        double priceT1 = optionPriceListT1[finiteDifference.getIndexOfInitialSpot()];
+        return (priceT1 - priceT0) / finiteDifference.getDiffTime() / 365;
     }
 
     /**
@@ -132,8 +326,39 @@ public class SingleOptionFiniteDifferenceCalculator extends BaseSingleOptionCalc
     public double getEuropeanOptionError() {
         EuropeanOption europeanOption = new EuropeanOption(option);
         SingleOptionFiniteDifferenceCalculator calculator = new SingleOptionFiniteDifferenceCalculator();
+        calculator.setFiniteDifference(finiteDifference);
         calculator.setOption(europeanOption);
         calculator.calculatePrice();
         return europeanOption.bsm() - calculator.getResult();
     }
 }
+
+
+/**
+ * 一组差分网格上的系数矩阵, 三对角矩阵第一次求解时分解, 之后可以被多个期权共用;
+ */
+class FiniteDifferenceSystem implements Serializable {
+    final TridiagonalMatrix params;
+    final TridiagonalMatrix explicitParams;
+    final TridiagonalMatrix startUpParams;
+    final Matrix inverseParams;
+    final Matrix inverseStartUpParams;
+    final boolean isImplicit;
+    final int numOfStartUpSteps;
+
+    FiniteDifferenceSystem(FiniteDifference finiteDifference, BaseSingleOption option) {
+        params = finiteDifference.paramsTridiagonalMatrix(option);
+        explicitParams = finiteDifference.explicitParamsTridiagonalMatrix(option);
+        startUpParams = finiteDifference.startUpParamsTridiagonalMatrix(option);
+        isImplicit = finiteDifference.getSchemeTheta() == 1.0;
+        numOfStartUpSteps = finiteDifference.getNumOfStartUpSteps();
+        if (finiteDifference.isUseDenseMatrix()) {
+            //稠密矩阵求逆, 每步O(m^2), 只用于和三对角求解对照;
+            inverseParams = params.toMatrix().inverse();
+            inverseStartUpParams = numOfStartUpSteps > 0 ? startUpParams.toMatrix().inverse() : null;
+        } else {
+            inverseParams = null;
+            inverseStartUpParams = null;
+        }
+    }
+}
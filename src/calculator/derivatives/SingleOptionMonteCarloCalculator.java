@@ -1,10 +1,13 @@
 package calculator.derivatives;
 
+import calculator.utility.Greeks;
 import calculator.utility.MonteCarlo;
-import flanagan.analysis.Stat;
+import calculator.utility.MonteCarloPathEvaluator;
+import calculator.utility.MonteCarloStatistics;
 import option.BaseSingleOption;
 
-import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
 import static calculator.utility.CalculatorError.*;
 
 /**
@@ -15,6 +18,10 @@ public class SingleOptionMonteCarloCalculator extends BaseSingleOptionCalculator
 
     private MonteCarlo monteCarloParams = new MonteCarlo();
     private double monteCarloError = 0.0;
+    /**
+     * 同样路径条数下, 不做方差缩减的方差和实际方差的比值;
+     */
+    private double varianceReductionFactor = Double.NaN;
 
     public MonteCarlo getMonteCarloParams() {
         return monteCarloParams;
@@ -32,6 +39,14 @@ public class SingleOptionMonteCarloCalculator extends BaseSingleOptionCalculator
         this.monteCarloError = monteCarloError;
     }
 
+    public double getVarianceReductionFactor() {
+        return varianceReductionFactor;
+    }
+
+    private void setVarianceReductionFactor(double varianceReductionFactor) {
+        this.varianceReductionFactor = varianceReductionFactor;
+    }
+
     @Override
     public boolean hasMethod() {
         return option.hasMonteCarloMethod();
@@ -44,89 +59,315 @@ public class SingleOptionMonteCarloCalculator extends BaseSingleOptionCalculator
             setError(UNSUPPORTED_METHOD);
             return;
         }
-        List<double[]> randomNumbersList = monteCarloParams.generateStandardNormalRandomNumberList();
-        calculatePrice(randomNumbersList);
+        if (monteCarloParams.isControlVariate() && option.hasMonteCarloControlVariate()) {
+            calculatePriceWithControlVariate();
+            return;
+        }
+        MonteCarloStatistics statistics = simulate(option);
+        if (statistics == null) {
+            return;
+        }
+        setResult(statistics.getMean(0));
+        setPriceError(statistics, statistics.getVariance(0));
+        setError(NORMAL);
     }
 
-    private void calculatePrice(List<double[]> randomNumbersList) {
-        List<double[]> pricePathList = monteCarloParams.generateMonteCarloPathList(option, randomNumbersList);
-        int n = pricePathList.size();
-        double[] resultList = new double[n];
-        for (int i = 0; i < n; i++) {
-            resultList[i] = option.monteCarloPrice(pricePathList.get(i));
+    /**
+     * 价格 = mean(Y) - beta * (mean(C) - E[C]), beta = cov(Y, C) / var(C);
+     */
+    private void calculatePriceWithControlVariate() {
+        double controlMean = option.monteCarloControlVariateMean(monteCarloParams.getNodes());
+        MonteCarloStatistics statistics;
+        try {
+            statistics = monteCarloParams.simulate(monteCarloParams.controlVariateEvaluator(option), 2,
+                    s -> controlVariateEstimate(s, controlMean));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            setError(CALCULATE_FAILED);
+            return;
+        } catch (ExecutionException e) {
+            setError(CALCULATE_FAILED);
+            return;
         }
-        setResult(Stat.mean(resultList));
-        double sd = Stat.standardError(resultList);
-        setMonteCarloError(sd * monteCarloParams.getMonteCarloErrorMult() /
-                Math.sqrt(n));
+        double[] estimate = controlVariateEstimate(statistics, controlMean);
+        setResult(estimate[0]);
+        setPriceError(statistics, estimate[2]);
         setError(NORMAL);
     }
 
+    /**
+     * @return {价格, 标准误差, 每个样本的方差}
+     */
+    private static double[] controlVariateEstimate(MonteCarloStatistics statistics, double controlMean) {
+        double controlVariance = statistics.getVariance(1);
+        double covariance = statistics.getCovariance(0, 1);
+        double beta = controlVariance > 0 ? covariance / controlVariance : 0;
+        double variance = Math.max(statistics.getVariance(0) - beta * covariance, 0);
+        double price = statistics.getMean(0) - beta * (statistics.getMean(1) - controlMean);
+        return new double[]{price, Math.sqrt(variance / statistics.getCount()), variance};
+    }
+
+    /**
+     * @param variance 每个样本的价格估计量的方差
+     */
+    private void setPriceError(MonteCarloStatistics statistics, double variance) {
+        variance = Math.max(variance, 0);
+        setMonteCarloError(Math.sqrt(variance / statistics.getCount()) * monteCarloParams.getMonteCarloErrorMult());
+        setVarianceReductionFactor(statistics.varianceReductionFactor(variance));
+    }
+
+    /**
+     * 同一组随机数下流式计算多个期权的价格;
+     *
+     * @param options 期权
+     * @return 统计结果, 和options一一对应; 计算失败时为null
+     */
+    private MonteCarloStatistics simulate(BaseSingleOption... options) {
+        return simulate(monteCarloParams.optionPriceEvaluator(options), options.length);
+    }
+
+    /**
+     * @return 统计结果; 计算失败时为null
+     */
+    private MonteCarloStatistics simulate(Supplier<MonteCarloPathEvaluator> evaluatorSupplier, int dimension) {
+        try {
+            return monteCarloParams.simulate(evaluatorSupplier, dimension);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            setError(CALCULATE_FAILED);
+        } catch (ExecutionException e) {
+            setError(CALCULATE_FAILED);
+        }
+        return null;
+    }
+
     @Override
     public void calculateImpliedVolatility() {
         resetCalculator();
         setError(UNSUPPORTED_METHOD);
     }
 
-    @Override
-    public void calculateDelta() {
-        resetCalculator();
-        List<double[]> randomNumbersList = monteCarloParams.generateStandardNormalRandomNumberList();
-        calculateDelta(randomNumbersList);
+    /**
+     * 障碍修正时收益直接依赖波动率(布朗桥的方差或平移后的障碍)和期初价格, 路径导数法和似然比法有偏, 改用扰动法;
+     */
+    private boolean isBumpGreekMethod() {
+        return MonteCarlo.GREEK_METHOD_BUMP.equals(monteCarloParams.getGreekMethod()) ||
+                (option.hasMonteCarloPathVisitor() && monteCarloParams.isBarrierCorrected());
     }
 
-    private void calculateDelta(List<double[]> randomNumbersList) {
+    /**
+     * 路径导数法或似然比法, 和价格在同一条路径上计算;
+     *
+     * @param index 1为delta, 2为vega, 3为rho
+     */
+    private void calculateGreekWithoutBump(int index) {
+        MonteCarloStatistics statistics = simulate(monteCarloParams.greekEvaluator(option), 4);
+        if (statistics == null) {
+            return;
+        }
+        double[] units = {1, 1, 100, 10000};
+        setResult(statistics.getMean(index) / units[index]);
+        setError(NORMAL);
+    }
+
+    /**
+     * 上下两个期权在同一条路径上计算, 公共随机数;
+     */
+    @Override
+    public void calculateDelta() {
         resetCalculator();
+        if (!option.hasMonteCarloMethod()) {
+            setError(UNSUPPORTED_METHOD);
+            return;
+        }
+        if (!isBumpGreekMethod()) {
+            calculateGreekWithoutBump(1);
+            return;
+        }
         BaseSingleOption[] options = shiftUnderlyingPrice();
         BaseSingleOption lowerOption = options[0];
         BaseSingleOption upperOption = options[1];
-
-        setOption(lowerOption);
-        calculatePrice(randomNumbersList);
-        if (!isNormal()) {
-            return;
-        }
-        double lowerPrice = getResult();
-
-        setOption(upperOption);
-        calculatePrice(randomNumbersList);
-        if (!isNormal()) {
+        MonteCarloStatistics statistics = simulate(lowerOption, upperOption);
+        if (statistics == null) {
             return;
         }
-        double upperPrice = getResult();
-        //reset;
-        setOption(option);
         double lowerSpotPrice = lowerOption.getUnderlying().getSpotPrice();
         double upperSpotPrice = upperOption.getUnderlying().getSpotPrice();
-        double delta = (upperPrice - lowerPrice) / (upperSpotPrice - lowerSpotPrice);
+        double delta = (statistics.getMean(1) - statistics.getMean(0)) / (upperSpotPrice - lowerSpotPrice);
         setResult(delta);
         setError(NORMAL);
     }
 
+    /**
+     * 上下两个波动率在同一条路径上计算, 公共随机数;
+     */
     @Override
     public void calculateVega() {
-
+        resetCalculator();
+        if (!option.hasMonteCarloMethod()) {
+            setError(UNSUPPORTED_METHOD);
+            return;
+        }
+        if (!isBumpGreekMethod()) {
+            calculateGreekWithoutBump(2);
+            return;
+        }
+        BaseSingleOption[] options = shiftVolatility();
+        MonteCarloStatistics statistics = simulate(options);
+        if (statistics == null) {
+            return;
+        }
+        setResult(vega(options, statistics.getMean(0), statistics.getMean(1)));
+        setError(NORMAL);
     }
 
     @Override
     public void calculateTheta() {
-
+        resetCalculator();
+        if (!option.hasMonteCarloMethod()) {
+            setError(UNSUPPORTED_METHOD);
+            return;
+        }
+        BaseSingleOption[] options = shiftTimeRemaining();
+        MonteCarloStatistics statistics = simulate(options);
+        if (statistics == null) {
+            return;
+        }
+        setResult(theta(options, statistics.getMean(0), statistics.getMean(1)));
+        setError(NORMAL);
     }
 
+    /**
+     * 三个标的价格在同一条路径上计算, 用二阶中心差分;
+     */
     @Override
     public void calculateGamma() {
-
-
+        resetCalculator();
+        if (!option.hasMonteCarloMethod()) {
+            setError(UNSUPPORTED_METHOD);
+            return;
+        }
+        BaseSingleOption[] options = shiftUnderlyingPrice();
+        MonteCarloStatistics statistics = simulate(options[0], option, options[1]);
+        if (statistics == null) {
+            return;
+        }
+        setResult(gamma(options, statistics.getMean(0), statistics.getMean(1), statistics.getMean(2)));
+        setError(NORMAL);
     }
 
     @Override
     public void calculateRho() {
+        resetCalculator();
+        if (!option.hasMonteCarloMethod()) {
+            setError(UNSUPPORTED_METHOD);
+            return;
+        }
+        if (!isBumpGreekMethod()) {
+            calculateGreekWithoutBump(3);
+            return;
+        }
+        BaseSingleOption[] options = shiftInterestRate();
+        MonteCarloStatistics statistics = simulate(options);
+        if (statistics == null) {
+            return;
+        }
+        setResult(rho(options, statistics.getMean(0), statistics.getMean(1)));
+        setError(NORMAL);
+    }
+
+    /**
+     * 原期权和全部扰动后的期权在同一条路径上计算, 一次模拟得到价格和全部Greeks;
+     * 不用扰动法时delta, vega和rho用路径导数法或似然比法, gamma和theta仍然扰动;
+     */
+    @Override
+    public void calculateAll() {
+        resetCalculator();
+        if (!option.hasMonteCarloMethod()) {
+            setError(UNSUPPORTED_METHOD);
+            return;
+        }
+        if (!isBumpGreekMethod()) {
+            calculateAllWithoutBump();
+            return;
+        }
+        BaseSingleOption[] underlyingOptions = shiftUnderlyingPrice();
+        BaseSingleOption[] volatilityOptions = shiftVolatility();
+        BaseSingleOption[] timeOptions = shiftTimeRemaining();
+        BaseSingleOption[] rateOptions = shiftInterestRate();
+        MonteCarloStatistics statistics = simulate(option, underlyingOptions[0], underlyingOptions[1],
+                volatilityOptions[0], volatilityOptions[1], timeOptions[0], rateOptions[0], rateOptions[1]);
+        if (statistics == null) {
+            return;
+        }
+        double price = statistics.getMean(0);
+        Greeks allGreeks = new Greeks();
+        allGreeks.setPrice(price);
+        allGreeks.setDelta((statistics.getMean(2) - statistics.getMean(1)) /
+                (underlyingOptions[1].getUnderlying().getSpotPrice() - underlyingOptions[0].getUnderlying().getSpotPrice()));
+        allGreeks.setGamma(gamma(underlyingOptions, statistics.getMean(1), price, statistics.getMean(2)));
+        allGreeks.setVega(vega(volatilityOptions, statistics.getMean(3), statistics.getMean(4)));
+        allGreeks.setTheta(theta(timeOptions, statistics.getMean(5), price));
+        allGreeks.setRho(rho(rateOptions, statistics.getMean(6), statistics.getMean(7)));
+        setGreeks(allGreeks);
+        setResult(price);
+        setPriceError(statistics, statistics.getVariance(0));
+        setError(NORMAL);
+    }
+
+    private void calculateAllWithoutBump() {
+        BaseSingleOption[] underlyingOptions = shiftUnderlyingPrice();
+        BaseSingleOption[] timeOptions = shiftTimeRemaining();
+        MonteCarloStatistics statistics = simulate(MonteCarlo.concat(monteCarloParams.greekEvaluator(option), 4,
+                monteCarloParams.optionPriceEvaluator(underlyingOptions[0], underlyingOptions[1], timeOptions[0]), 3), 7);
+        if (statistics == null) {
+            return;
+        }
+        double price = statistics.getMean(0);
+        Greeks allGreeks = new Greeks();
+        allGreeks.setPrice(price);
+        allGreeks.setDelta(statistics.getMean(1));
+        allGreeks.setVega(statistics.getMean(2) / 100);
+        allGreeks.setRho(statistics.getMean(3) / 10000);
+        allGreeks.setGamma(gamma(underlyingOptions, statistics.getMean(4), price, statistics.getMean(5)));
+        allGreeks.setTheta(theta(timeOptions, statistics.getMean(6), price));
+        setGreeks(allGreeks);
+        setResult(price);
+        setPriceError(statistics, statistics.getVariance(0));
+        setError(NORMAL);
+    }
+
+    private double gamma(BaseSingleOption[] options, double lowerPrice, double price, double upperPrice) {
+        double lowerSpotPrice = options[0].getUnderlying().getSpotPrice();
+        double upperSpotPrice = options[1].getUnderlying().getSpotPrice();
+        double s = option.getUnderlying().getSpotPrice();
+        double upperDelta = (upperPrice - price) / (upperSpotPrice - s);
+        double lowerDelta = (price - lowerPrice) / (s - lowerSpotPrice);
+        return (upperDelta - lowerDelta) / ((upperSpotPrice - lowerSpotPrice) / 2);
+    }
+
+    private double vega(BaseSingleOption[] options, double lowerPrice, double upperPrice) {
+        double lowerVol = options[0].getVanillaOptionParams().getVolatility();
+        double upperVol = options[1].getVanillaOptionParams().getVolatility();
+        return (upperPrice - lowerPrice) / (upperVol - lowerVol) / 100;
+    }
+
+    private double theta(BaseSingleOption[] options, double lowerPrice, double price) {
+        double lowerT = options[0].getVanillaOptionParams().getTimeRemaining();
+        double upperT = options[1].getVanillaOptionParams().getTimeRemaining();
+        return (lowerPrice - price) / (upperT - lowerT) / 365;
+    }
 
+    private double rho(BaseSingleOption[] options, double lowerPrice, double upperPrice) {
+        double lowerRate = options[0].getUnderlying().getRiskFreeRate();
+        double upperRate = options[1].getUnderlying().getRiskFreeRate();
+        return (upperPrice - lowerPrice) / (upperRate - lowerRate) / 10000;
     }
 
     @Override
     public void resetCalculator() {
         super.resetCalculator();
         setMonteCarloError(0.0);
+        setVarianceReductionFactor(Double.NaN);
     }
 }
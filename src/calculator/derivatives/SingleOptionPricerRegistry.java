@@ -0,0 +1,90 @@
+package calculator.derivatives;
+
+import option.BaseSingleOption;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 解析解定价方法的注册表: (期权类, 方法名)只用反射解析一次, 生成ToDoubleFunction后缓存;
+ * 定价时直接调用, 不再查找方法, 结果也不装箱;
+ * 先找类自身声明的方法, 再找继承来的public方法; 方法必须是public, 没有参数, 返回double;
+ *
+ * @author liangcy
+ */
+final class SingleOptionPricerRegistry {
+    /**
+     * 方法不存在时缓存的占位函数;
+     */
+    private static final ToDoubleFunction<BaseSingleOption> NOT_FOUND = option -> Double.NaN;
+
+    private static final ClassValue<ConcurrentMap<String, ToDoubleFunction<BaseSingleOption>>> PRICERS =
+            new ClassValue<ConcurrentMap<String, ToDoubleFunction<BaseSingleOption>>>() {
+                @Override
+                protected ConcurrentMap<String, ToDoubleFunction<BaseSingleOption>> computeValue(Class<?> type) {
+                    return new ConcurrentHashMap<>();
+                }
+            };
+
+    private SingleOptionPricerRegistry() {
+    }
+
+    /**
+     * @param optionClass 期权类
+     * @param methodName  方法名
+     * @return 定价函数, 方法不存在时为null
+     */
+    static ToDoubleFunction<BaseSingleOption> getPricer(Class<? extends BaseSingleOption> optionClass,
+                                                        String methodName) {
+        if (methodName == null) {
+            return null;
+        }
+        ToDoubleFunction<BaseSingleOption> pricer = PRICERS.get(optionClass)
+                .computeIfAbsent(methodName, name -> resolve(optionClass, name));
+        return pricer == NOT_FOUND ? null : pricer;
+    }
+
+    private static Method findMethod(Class<?> optionClass, String methodName) throws NoSuchMethodException {
+        try {
+            return optionClass.getDeclaredMethod(methodName);
+        } catch (NoSuchMethodException e) {
+            return optionClass.getMethod(methodName);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ToDoubleFunction<BaseSingleOption> resolve(Class<?> optionClass, String methodName) {
+        Method method;
+        try {
+            method = findMethod(optionClass, methodName);
+        } catch (NoSuchMethodException e) {
+            return NOT_FOUND;
+        }
+        if (method.getReturnType() != double.class || !Modifier.isPublic(method.getModifiers()) ||
+                Modifier.isStatic(method.getModifiers())) {
+            return NOT_FOUND;
+        }
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle handle = lookup.unreflect(method);
+            CallSite site = LambdaMetafactory.metafactory(lookup, "applyAsDouble",
+                    MethodType.methodType(ToDoubleFunction.class),
+                    MethodType.methodType(double.class, Object.class),
+                    handle, MethodType.methodType(double.class, method.getDeclaringClass()));
+            return (ToDoubleFunction<BaseSingleOption>) site.getTarget().invoke();
+        } catch (IllegalAccessException | LambdaConversionException e) {
+            return NOT_FOUND;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package calculator.utility;
+
+/**
+ * 蒙特卡洛路径上的障碍监测, 给出相邻两个时间点之间触碰障碍的概率;
+ * 不修正: 只看时间点上的价格;
+ * 布朗桥: 两个时间点之间按布朗桥计算穿过障碍的概率, 近似连续监测; 障碍在对数空间关于时间线性时公式是精确的;
+ * 平移: 按Broadie-Glasserman-Kou把障碍向标的价格平移exp(0.5826*vol*sqrt(dt)), 再只看时间点上的价格;
+ * 每个线程使用各自的实例;
+ *
+ * @author liangcy
+ * @reference Broadie, M., Glasserman, P. and Kou, S. (1997). A continuity correction for discrete barrier options.
+ * Mathematical Finance 7(4).
+ * Glasserman, P. (2003). Monte Carlo Methods in Financial Engineering, 6.4.
+ */
+public class BarrierMonitor {
+    /**
+     * -zeta(1/2)/sqrt(2*pi);
+     */
+    public static final double BGK_BETA = 0.5826;
+
+    private final double[] upperBarriers;
+    private final double[] lowerBarriers;
+    private final boolean isBrownianBridge;
+    private final double variance;
+    private double previousPrice;
+
+    /**
+     * @param upperBarriers 每个时间点的上障碍价, 长度为nodes+1, 没有上障碍时为null
+     * @param lowerBarriers 每个时间点的下障碍价, 长度为nodes+1, 没有下障碍时为null
+     * @param correction    MonteCarlo.BARRIER_CORRECTION_*
+     * @param vol           波动率
+     * @param deltaT        时间步长
+     */
+    public BarrierMonitor(double[] upperBarriers, double[] lowerBarriers, String correction,
+                          double vol, double deltaT) {
+        this.isBrownianBridge = MonteCarlo.BARRIER_CORRECTION_BROWNIAN_BRIDGE.equals(correction);
+        this.variance = vol * vol * deltaT;
+        if (MonteCarlo.BARRIER_CORRECTION_SHIFT.equals(correction)) {
+            double shift = Math.exp(BGK_BETA * vol * Math.sqrt(deltaT));
+            this.upperBarriers = shift(upperBarriers, 1 / shift);
+            this.lowerBarriers = shift(lowerBarriers, shift);
+        } else {
+            this.upperBarriers = upperBarriers;
+            this.lowerBarriers = lowerBarriers;
+        }
+    }
+
+    private static double[] shift(double[] barriers, double mult) {
+        if (barriers == null) {
+            return null;
+        }
+        double[] result = new double[barriers.length];
+        for (int i = 0; i < barriers.length; i++) {
+            result[i] = barriers[i] * mult;
+        }
+        return result;
+    }
+
+    /**
+     * 每个时间点依次调用;
+     *
+     * @param step  时间点, 从0开始
+     * @param price 这个时间点的价格
+     * @return 在上一个时间点没有触碰的条件下, 到这个时间点为止触碰障碍的概率; 时间点上触碰时为1, 第0个时间点只能是0或1
+     */
+    public double crossingProbability(int step, double price) {
+        double previous = previousPrice;
+        previousPrice = price;
+        if ((upperBarriers != null && price > upperBarriers[step]) ||
+                (lowerBarriers != null && price < lowerBarriers[step])) {
+            return 1;
+        }
+        if (step == 0 || !isBrownianBridge || variance <= 0) {
+            return 0;
+        }
+        double survival = 1;
+        if (upperBarriers != null) {
+            survival *= 1 - bridgeCrossingProbability(previous, price, upperBarriers[step - 1], upperBarriers[step]);
+        }
+        if (lowerBarriers != null) {
+            survival *= 1 - bridgeCrossingProbability(previous, price, lowerBarriers[step - 1], lowerBarriers[step]);
+        }
+        return 1 - survival;
+    }
+
+    /**
+     * 两端都在障碍同一侧时, 对数价格的布朗桥穿过障碍的概率exp(-2*ln(h0/s0)*ln(h1/s1)/(vol^2*dt));
+     */
+    private double bridgeCrossingProbability(double s0, double s1, double h0, double h1) {
+        return Math.exp(-2 * Math.log(h0 / s0) * Math.log(h1 / s1) / variance);
+    }
+}
@@ -0,0 +1,89 @@
+package calculator.utility;
+
+import java.io.Serializable;
+
+/**
+ * 布朗桥: 先用第一个随机数生成终点, 再依次二分生成中间点, 把低差异序列最均匀的前几维用在对路径影响最大的位置;
+ * 时间点等间隔, 输入和输出都是独立的标准正态随机数, 输出可以直接作为每一步的随机数;
+ *
+ * @author liangcy
+ * @reference Glasserman, P. (2003). Monte Carlo Methods in Financial Engineering, 3.1.
+ */
+public class BrownianBridge implements Serializable {
+    private final int size;
+    private final int[] leftIndex;
+    private final int[] rightIndex;
+    private final int[] bridgeIndex;
+    private final double[] leftWeight;
+    private final double[] rightWeight;
+    private final double[] stdDev;
+    private final double[] path;
+
+    /**
+     * @param size 时间步数
+     */
+    public BrownianBridge(int size) {
+        this.size = size;
+        this.leftIndex = new int[size];
+        this.rightIndex = new int[size];
+        this.bridgeIndex = new int[size];
+        this.leftWeight = new double[size];
+        this.rightWeight = new double[size];
+        this.stdDev = new double[size];
+        this.path = new double[size];
+        //时间以步长为单位, 第i个点的时间为i+1;
+        int[] map = new int[size];
+        map[size - 1] = 1;
+        bridgeIndex[0] = size - 1;
+        stdDev[0] = Math.sqrt(size);
+        int j = 0;
+        for (int i = 1; i < size; i++) {
+            while (map[j] != 0) {
+                j++;
+            }
+            int k = j;
+            while (map[k] == 0) {
+                k++;
+            }
+            //map[j, k-1]还没有生成, map[k]已经生成;
+            int l = j + ((k - 1 - j) >> 1);
+            map[l] = i;
+            bridgeIndex[i] = l;
+            leftIndex[i] = j;
+            rightIndex[i] = k;
+            double tl = l + 1;
+            double tk = k + 1;
+            double tj = j;
+            leftWeight[i] = (tk - tl) / (tk - tj);
+            rightWeight[i] = (tl - tj) / (tk - tj);
+            stdDev[i] = Math.sqrt((tl - tj) * (tk - tl) / (tk - tj));
+            j = k + 1;
+            if (j >= size) {
+                j = 0;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param randomNums 标准正态随机数, 第一个决定终点, 之后依次决定二分点
+     * @param increments 每一步的标准正态增量, 可以和randomNums是同一个数组
+     */
+    public void transform(double[] randomNums, double[] increments) {
+        path[size - 1] = stdDev[0] * randomNums[0];
+        for (int i = 1; i < size; i++) {
+            int j = leftIndex[i];
+            int k = rightIndex[i];
+            int l = bridgeIndex[i];
+            double left = j == 0 ? 0 : path[j - 1];
+            path[l] = leftWeight[i] * left + rightWeight[i] * path[k] + stdDev[i] * randomNums[i];
+        }
+        increments[0] = path[0];
+        for (int i = 1; i < size; i++) {
+            increments[i] = path[i] - path[i - 1];
+        }
+    }
+}
@@ -3,7 +3,7 @@ package calculator.utility;
 import flanagan.math.Matrix;
 
 import java.util.Arrays;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * @author liangcy
@@ -11,17 +11,55 @@ import java.util.Random;
 
 public class CalculateUtil {
 
+    /**
+     * 每个线程各自的随机数发生器, 不加锁, 也不用每次新建;
+     */
+    private static final ThreadLocal<Xoshiro256StarStar> RANDOM =
+            ThreadLocal.withInitial(() -> new Xoshiro256StarStar(ThreadLocalRandom.current().nextLong()));
+
     public static double normalRandom() {
-        Random x = new Random();
-        return x.nextGaussian();
+        return RANDOM.get().nextGaussian();
     }
 
+    /**
+     * 用种子重新设置当前线程的随机数发生器, 之后的normalRandom接着这个序列生成;
+     */
     public static double normalRandomWithSeed(long seed) {
-        Random x = new Random();
-        x.setSeed(seed);
-        return x.nextGaussian();
+        Xoshiro256StarStar random = RANDOM.get();
+        random.setSeed(seed);
+        return random.nextGaussian();
+    }
+
+    /**
+     * @param random 随机数流, 每个线程各自使用
+     * @param z      结果向量, 每个值都是标准正态随机数
+     */
+    public static void fillNormalRandom(RandomNumberGenerator random, double[] z) {
+        random.fillGaussian(z);
     }
 
+    /**
+     * normalCDF的有理函数系数, 只初始化一次;
+     */
+    private static final double[] NORMAL_CDF_A = {2.2352520354606839287, 161.02823106855587881, 1067.6894854603709582,
+            18154.981253343561249, 0.065682337918207449113};
+
+    private static final double[] NORMAL_CDF_B = {47.20258190468824187, 976.09855173777669322, 10260.932208618978205,
+            45507.789335026729956};
+
+    private static final double[] NORMAL_CDF_C = {0.39894151208813466764, 8.8831497943883759412, 93.506656132177855979,
+            597.27027639480026226, 2494.5375852903726711, 6848.1904505362823326, 11602.651437647350124,
+            9842.7148383839780218, 1.0765576773720192317e-8};
+
+    private static final double[] NORMAL_CDF_D = {22.266688044328115691, 235.38790178262499861, 1519.377599407554805,
+            6485.558298266760755, 18615.571640885098091, 34900.952721145977266, 38912.003286093271411, 19685.429676859990727};
+
+    private static final double[] NORMAL_CDF_P = {0.21589853405795699, 0.1274011611602473639, 0.022235277870649807,
+            0.001421619193227893466, 2.9112874951168792e-5, 0.02307344176494017303};
+
+    private static final double[] NORMAL_CDF_Q = {1.28426009614491121, 0.468238212480865118, 0.0659881378689285515, 0.00378239633202758244,
+            7.29751555083966205e-5};
+
     /**
      * 计算正态分布累计密度函数的子函数.
      * (((an * x + a0) * x + a1)...) / ((b0 * x + b1)...)
@@ -64,19 +102,6 @@ public class CalculateUtil {
      * ACM Transactions on Mathematical Software. 19, 22-32.
      */
     public static double normalCDF(double x) {
-        final double[] a = {2.2352520354606839287, 161.02823106855587881, 1067.6894854603709582, 18154.981253343561249,
-                0.065682337918207449113};
-        final double[] b = {47.20258190468824187, 976.09855173777669322, 10260.932208618978205,
-                45507.789335026729956};
-        final double[] c = {0.39894151208813466764, 8.8831497943883759412, 93.506656132177855979,
-                597.27027639480026226, 2494.5375852903726711, 6848.1904505362823326, 11602.651437647350124,
-                9842.7148383839780218, 1.0765576773720192317e-8};
-        final double[] d = {22.266688044328115691, 235.38790178262499861, 1519.377599407554805, 6485.558298266760755,
-                18615.571640885098091, 34900.952721145977266, 38912.003286093271411, 19685.429676859990727};
-        final double[] p = {0.21589853405795699, 0.1274011611602473639, 0.022235277870649807, 0.001421619193227893466,
-                2.9112874951168792e-5, 0.02307344176494017303};
-        final double[] q = {1.28426009614491121, 0.468238212480865118, 0.0659881378689285515, 0.00378239633202758244,
-                7.29751555083966205e-5};
         //N^-1(0.75)
         double threshold = 0.67448975019608171;
         double root32 = Math.sqrt(32.0);
@@ -88,21 +113,21 @@ public class CalculateUtil {
         if (y <= threshold) {
             if (y > ConstantNumber.EPS) {
                 xsq = x * x;
-                result = x * rollMultiplyDivide(a, b, xsq) + 0.5;
+                result = x * rollMultiplyDivide(NORMAL_CDF_A, NORMAL_CDF_B, xsq) + 0.5;
             } else {
                 result = 0.5;
             }
             return result;
         } else if (y <= root32) {
             // evaluate for N^-1(0.75) <= |x| <= sqrt(32)
-            result = delMult(y) * rollMultiplyDivide(c, d, y);
+            result = delMult(y) * rollMultiplyDivide(NORMAL_CDF_C, NORMAL_CDF_D, y);
             if (x > 0.0) {
                 result = 1 - result;
             }
             return result;
         } else {
             xsq = (1 / x) * (1 / x);
-            result = xsq * rollMultiplyDivide(p, q, xsq);
+            result = xsq * rollMultiplyDivide(NORMAL_CDF_P, NORMAL_CDF_Q, xsq);
             result = (sqrtTwoPi - result) / y;
             result = delMult(x) * result;
             if (x > 0.0) {
@@ -119,6 +144,48 @@ public class CalculateUtil {
         return (x >= 0.0) ? Math.floor(x) : -Math.floor(-x);
     }
 
+    /**
+     * @param p 概率, (0, 1)
+     * @return 正态分布累计密度函数的反函数, Acklam的有理函数近似, 再用一步Halley迭代修正到双精度;
+     * @reference Acklam, P. J. (2003). An algorithm for computing the inverse normal cumulative distribution function.
+     */
+    public static double normalInverseCDF(double p) {
+        if (p <= 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        if (p >= 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        final double[] a = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+                1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+        final double[] b = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+                6.680131188771972e+01, -1.328068155288572e+01};
+        final double[] c = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+                -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+        final double[] d = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+                3.754408661907416e+00};
+        final double pLow = 0.02425;
+        double x;
+        if (p < pLow) {
+            double q = Math.sqrt(-2 * Math.log(p));
+            x = (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5]) /
+                    ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+        } else if (p <= 1 - pLow) {
+            double q = p - 0.5;
+            double r = q * q;
+            x = (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q /
+                    (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+        } else {
+            double q = Math.sqrt(-2 * Math.log(1 - p));
+            x = -(((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5]) /
+                    ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+        }
+        //Halley迭代;
+        double e = normalCDF(x) - p;
+        double u = e * Math.sqrt(2 * Math.PI) * Math.exp(x * x / 2);
+        return x - u / (1 + x * u / 2);
+    }
+
     public static double normalPDF(double x) {
         return 1.0 / ConstantNumber.SQRT_TWO_PI * Math.exp(-x * x / 2);
     }
@@ -303,4 +370,18 @@ public class CalculateUtil {
         return z;
     }
 
+    /**
+     * 逐项取最大值, 结果写入z, 不分配新数组;
+     *
+     * @param a 向量
+     * @param b 向量
+     * @param z 结果向量, 可以和a或b是同一个数组
+     */
+    public static void maxVector(double[] a, double[] b, double[] z) {
+        int n = a.length;
+        for (int i = 0; i < n; i++) {
+            z[i] = Math.max(a[i], b[i]);
+        }
+    }
+
 }
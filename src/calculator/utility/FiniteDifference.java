@@ -9,6 +9,24 @@ import java.io.Serializable;
  * @author liangcy
  */
 public class FiniteDifference implements Serializable {
+    /**
+     * 差分格式: 全隐式/Crank-Nicolson/Rannacher(开始几步用隐式半步平滑的Crank-Nicolson)
+     */
+    public static final String SCHEME_IMPLICIT = "implicit";
+    public static final String SCHEME_CRANK_NICOLSON = "crank-nicolson";
+    public static final String SCHEME_RANNACHER = "rannacher";
+    /**
+     * 价格网格: 均匀网格/以执行价为中心的sinh非均匀网格
+     */
+    public static final String GRID_UNIFORM = "uniform";
+    public static final String GRID_SINH = "sinh";
+    /**
+     * 提前行权的求解方法: Brennan-Schwartz直接求解/投影超松弛迭代(PSOR)/先求解再取最大值
+     */
+    public static final String EARLY_EXERCISE_BRENNAN_SCHWARTZ = "brennan-schwartz";
+    public static final String EARLY_EXERCISE_PSOR = "psor";
+    public static final String EARLY_EXERCISE_PROJECTION = "projection";
+
     private int numOfTimePoints = 501;
     private int numOfLowerPricePoints = 100;
     private double[] pricePoints;
@@ -16,7 +34,28 @@ public class FiniteDifference implements Serializable {
     private double diffPrice;
     private double diffTime;
     private boolean hasGeneratedPoints = false;
-
+    /**
+     * 是否用稠密矩阵求逆递推, 只作为三对角求解的对照;
+     */
+    private boolean useDenseMatrix = false;
+    private String scheme = SCHEME_IMPLICIT;
+    /**
+     * Rannacher格式中, 到期日开始用两个隐式半步代替的Crank-Nicolson步数;
+     */
+    private int rannacherSteps = 2;
+    private String gridType = GRID_UNIFORM;
+    /**
+     * sinh网格的集中程度, 是中心价格的倍数, 越小越集中;
+     */
+    private double gridConcentration = 0.1;
+    private int indexOfInitialSpot;
+    private String earlyExerciseMethod = EARLY_EXERCISE_BRENNAN_SCHWARTZ;
+    /**
+     * PSOR的松弛因子, 取值(0, 2);
+     */
+    private double psorOmega = 1.2;
+    private double psorTolerance = 1e-10;
+    private int psorMaxIterations = 1000;
 
     public void setNumOfTimePoints(int numOfTimePoints) {
         this.numOfTimePoints = numOfTimePoints;
@@ -44,6 +83,9 @@ public class FiniteDifference implements Serializable {
         return timePoints;
     }
 
+    /**
+     * @return 均匀网格的价格间隔; 非均匀网格为spot处的价格间隔;
+     */
     public double getDiffPrice() {
         return diffPrice;
     }
@@ -52,12 +94,116 @@ public class FiniteDifference implements Serializable {
         return diffTime;
     }
 
+    public boolean isUseDenseMatrix() {
+        return useDenseMatrix;
+    }
+
+    public void setUseDenseMatrix(boolean useDenseMatrix) {
+        this.useDenseMatrix = useDenseMatrix;
+    }
+
+    public String getScheme() {
+        return scheme;
+    }
+
+    public void setScheme(String scheme) {
+        this.scheme = scheme;
+    }
+
+    public int getRannacherSteps() {
+        return rannacherSteps;
+    }
+
+    public void setRannacherSteps(int rannacherSteps) {
+        this.rannacherSteps = Math.max(0, rannacherSteps);
+    }
+
+    public String getGridType() {
+        return gridType;
+    }
+
+    public void setGridType(String gridType) {
+        this.gridType = gridType;
+        this.hasGeneratedPoints = false;
+    }
+
+    public double getGridConcentration() {
+        return gridConcentration;
+    }
+
+    public void setGridConcentration(double gridConcentration) {
+        this.gridConcentration = gridConcentration;
+        this.hasGeneratedPoints = false;
+    }
+
+    public String getEarlyExerciseMethod() {
+        return earlyExerciseMethod;
+    }
+
+    public void setEarlyExerciseMethod(String earlyExerciseMethod) {
+        this.earlyExerciseMethod = earlyExerciseMethod;
+    }
+
+    public double getPsorOmega() {
+        return psorOmega;
+    }
+
+    public void setPsorOmega(double psorOmega) {
+        this.psorOmega = psorOmega;
+    }
+
+    public double getPsorTolerance() {
+        return psorTolerance;
+    }
+
+    public void setPsorTolerance(double psorTolerance) {
+        this.psorTolerance = psorTolerance;
+    }
+
+    public int getPsorMaxIterations() {
+        return psorMaxIterations;
+    }
+
+    public void setPsorMaxIterations(int psorMaxIterations) {
+        this.psorMaxIterations = psorMaxIterations;
+    }
+
+    /**
+     * @return theta格式的权重, 全隐式为1, Crank-Nicolson为0.5;
+     */
+    public double getSchemeTheta() {
+        if (SCHEME_CRANK_NICOLSON.equals(scheme) || SCHEME_RANNACHER.equals(scheme)) {
+            return 0.5;
+        } else {
+            return 1.0;
+        }
+    }
+
+    /**
+     * @return 从到期日开始, 需要用两个隐式半步代替的时间步数;
+     */
+    public int getNumOfStartUpSteps() {
+        if (SCHEME_RANNACHER.equals(scheme)) {
+            return Math.min(rannacherSteps, numOfTimePoints - 1);
+        } else {
+            return 0;
+        }
+    }
+
 
     /**
      * @param option
+     * @param center 非均匀网格的中心
      */
-    private void generatePricePoints(BaseSingleOption option) {
-        double s = option.getUnderlying().getSpotPrice();
+    private void generatePricePoints(BaseSingleOption option, double center) {
+        if (GRID_SINH.equals(gridType)) {
+            generateSinhPricePoints(option.getUnderlying().getSpotPrice(), center);
+        } else {
+            generateUniformPricePoints(option.getUnderlying().getSpotPrice());
+        }
+    }
+
+    private void generateUniformPricePoints(double s) {
         int priceRange = 5;
         //[0, s] ∪ [s, 5s]; 之所以不对称是为了计算看涨期权, 因为标的资产价格越高, 看涨期权越贵, 越影响期权价格;
         this.diffPrice = s / numOfLowerPricePoints;
@@ -65,6 +211,40 @@ public class FiniteDifference implements Serializable {
         for (int i = 0; i < pricePoints.length; i++) {
             pricePoints[i] = s - diffPrice * (numOfLowerPricePoints - i);
         }
+        this.indexOfInitialSpot = numOfLowerPricePoints;
+    }
+
+    /**
+     * 价格点 = center + c * sinh(x), x均匀分布, 越靠近center越密集;
+     * 调整x的间隔使得0和spot都正好在网格上;
+     *
+     * @param s      spot
+     * @param center 网格中心, 一般是执行价
+     */
+    private void generateSinhPricePoints(double s, double center) {
+        int priceRange = 5;
+        int n = numOfLowerPricePoints * priceRange;
+        double c = gridConcentration * center;
+        double upperPrice = priceRange * Math.max(s, center);
+        double lowerX = asinh(-center / c);
+        double upperX = asinh((upperPrice - center) / c);
+        double spotX = asinh((s - center) / c);
+        //spot的下标, 计算gamma要用到spot两边各两个点;
+        int index = (int) Math.round((spotX - lowerX) / (upperX - lowerX) * n);
+        index = Math.min(Math.max(index, 2), n - 2);
+        double diffX = (spotX - lowerX) / index;
+        this.pricePoints = new double[n + 1];
+        for (int i = 0; i <= n; i++) {
+            pricePoints[i] = center + c * Math.sinh(lowerX + diffX * i);
+        }
+        pricePoints[0] = 0;
+        pricePoints[index] = s;
+        this.indexOfInitialSpot = index;
+        this.diffPrice = pricePoints[index + 1] - pricePoints[index];
+    }
+
+    private static double asinh(double x) {
+        return Math.log(x + Math.sqrt(x * x + 1));
     }
 
     /**
@@ -82,8 +262,18 @@ public class FiniteDifference implements Serializable {
     }
 
     public void generateFiniteDifferencePoints(BaseSingleOption option) {
+        generateFiniteDifferencePoints(option, option.getVanillaOptionParams().getStrikePrice());
+    }
+
+    /**
+     * 多个执行价共用网格时, 非均匀网格以spot为中心;
+     *
+     * @param option
+     * @param center 非均匀网格的中心
+     */
+    public void generateFiniteDifferencePoints(BaseSingleOption option, double center) {
         generateTimePoints(option);
-        generatePricePoints(option);
+        generatePricePoints(option, center);
         this.hasGeneratedPoints = true;
     }
 
@@ -91,37 +281,69 @@ public class FiniteDifference implements Serializable {
      * @return spot的下标
      */
     public int getIndexOfInitialSpot() {
-        return numOfLowerPricePoints;
+        return indexOfInitialSpot;
     }
 
     /**
      * @param option
-     * @return 差分系数矩阵, 该矩阵求逆计算速度较慢;
+     * @return 差分系数矩阵(隐式部分), 该矩阵求逆计算速度较慢;
      * 是一个三对角矩阵,形如[[b0,c0,0,...,0],[a1,b1,c1,...,0],...,[0,...,0,an,bn]];
      */
     public Matrix paramsMatrix(BaseSingleOption option) {
-        double[][] params = paramsArray(option);
-        double[] a = params[0];
-        double[] b = params[1];
-        double[] c = params[2];
-        int n = a.length;
-        double[][] matrix = new double[n][n];
-        //主对角系数b
+        return paramsTridiagonalMatrix(option).toMatrix();
+    }
+
+    /**
+     * 每个时间步求解 (I - theta * dt * L) * V(i) = (I + (1 - theta) * dt * L) * V(i + 1);
+     *
+     * @param option
+     * @return 差分系数的三对角矩阵(隐式部分), 每个时间步求解为O(n);
+     */
+    public TridiagonalMatrix paramsTridiagonalMatrix(BaseSingleOption option) {
+        return paramsTridiagonalMatrix(operatorArray(option), -getSchemeTheta(), diffTime);
+    }
+
+    /**
+     * @param option
+     * @return 差分系数的三对角矩阵(显式部分), 全隐式格式时是单位矩阵;
+     */
+    public TridiagonalMatrix explicitParamsTridiagonalMatrix(BaseSingleOption option) {
+        return paramsTridiagonalMatrix(operatorArray(option), 1 - getSchemeTheta(), diffTime);
+    }
+
+    /**
+     * @param option
+     * @return Rannacher开始时半步长的全隐式系数矩阵;
+     */
+    public TridiagonalMatrix startUpParamsTridiagonalMatrix(BaseSingleOption option) {
+        return paramsTridiagonalMatrix(operatorArray(option), -1, diffTime / 2);
+    }
+
+    /**
+     * @param operator 空间差分算子系数
+     * @param weight   算子的权重
+     * @param dt       时间步长
+     * @return I + weight * dt * L
+     */
+    private TridiagonalMatrix paramsTridiagonalMatrix(double[][] operator, double weight, double dt) {
+        int n = pricePoints.length;
+        double[] a = new double[n];
+        double[] b = new double[n];
+        double[] c = new double[n];
         for (int j = 0; j < n; j++) {
-            matrix[j][j] = b[j];
-        }
-        //上对角系数c
-        for (int j = 0; j < n - 1; j++) {
-            matrix[j][j + 1] = c[j];
+            a[j] = weight * dt * operator[0][j];
+            b[j] = 1 + weight * dt * operator[1][j];
+            c[j] = weight * dt * operator[2][j];
         }
-        //下对角系数a
-        for (int j = 1; j < n; j++) {
-            matrix[j][j - 1] = a[j];
-        }
-        return new Matrix(matrix);
+        return new TridiagonalMatrix(a, b, c);
     }
 
-    private double[][] paramsArray(BaseSingleOption option) {
+    /**
+     * @param option
+     * @return 空间差分算子L的系数, L(V)_j = alpha_j * V_{j-1} + beta_j * V_j + gamma_j * V_{j+1}, 和时间步长无关;
+     * 一阶和二阶导数用非均匀网格的三点中心差分, 均匀网格时退化为普通中心差分;
+     */
+    private double[][] operatorArray(BaseSingleOption option) {
         if (!hasGeneratedPoints) {
             generateFiniteDifferencePoints(option);
         }
@@ -129,19 +351,55 @@ public class FiniteDifference implements Serializable {
         double mu = option.getUnderlying().getCostOfCarry();
         double r = option.getUnderlying().getRiskFreeRate();
         int n = pricePoints.length;
-        double[] b = new double[n];
-        for (int j = 0; j < n; j++) {
-            b[j] = 1 + Math.pow(vol * j, 2) * diffTime + r * diffTime;
-        }
-        double[] a = new double[n];
-        for (int j = 0; j < n; j++) {
-            a[j] = mu * j * diffTime / 2 - Math.pow(vol * j, 2) * diffTime / 2;
-        }
-        double[] c = new double[n];
-        for (int j = 0; j < n; j++) {
-            c[j] = -mu * j * diffTime / 2 - Math.pow(vol * j, 2) * diffTime / 2;
+        double[] alpha = new double[n];
+        double[] beta = new double[n];
+        double[] gamma = new double[n];
+        //价格为0的点只有贴现项;
+        beta[0] = -r;
+        double[] weights = new double[3];
+        for (int j = 1; j < n; j++) {
+            double s = pricePoints[j];
+            double lowerDiff = s - pricePoints[j - 1];
+            //最后一个点假设外侧间隔和内侧相同;
+            double upperDiff = j < n - 1 ? pricePoints[j + 1] - s : lowerDiff;
+            double diffusion = Math.pow(vol * s, 2) / 2;
+            double drift = mu * s;
+            firstDerivativeWeights(lowerDiff, upperDiff, weights);
+            alpha[j] = drift * weights[0];
+            beta[j] = drift * weights[1] - r;
+            gamma[j] = drift * weights[2];
+            secondDerivativeWeights(lowerDiff, upperDiff, weights);
+            alpha[j] += diffusion * weights[0];
+            beta[j] += diffusion * weights[1];
+            gamma[j] += diffusion * weights[2];
         }
-        return new double[][]{a, b, c};
+        return new double[][]{alpha, beta, gamma};
+    }
+
+    /**
+     * 非均匀网格一阶导数的三点中心差分权重;
+     *
+     * @param lowerDiff 和下一个点的间隔
+     * @param upperDiff 和上一个点的间隔
+     * @param weights   V_{j-1}, V_j, V_{j+1}的权重
+     */
+    public static void firstDerivativeWeights(double lowerDiff, double upperDiff, double[] weights) {
+        weights[0] = -upperDiff / (lowerDiff * (lowerDiff + upperDiff));
+        weights[1] = (upperDiff - lowerDiff) / (lowerDiff * upperDiff);
+        weights[2] = lowerDiff / (upperDiff * (lowerDiff + upperDiff));
+    }
+
+    /**
+     * 非均匀网格二阶导数的三点中心差分权重;
+     *
+     * @param lowerDiff 和下一个点的间隔
+     * @param upperDiff 和上一个点的间隔
+     * @param weights   V_{j-1}, V_j, V_{j+1}的权重
+     */
+    public static void secondDerivativeWeights(double lowerDiff, double upperDiff, double[] weights) {
+        weights[0] = 2 / (lowerDiff * (lowerDiff + upperDiff));
+        weights[1] = -2 / (lowerDiff * upperDiff);
+        weights[2] = 2 / (upperDiff * (lowerDiff + upperDiff));
     }
 
 }
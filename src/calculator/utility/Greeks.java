@@ -0,0 +1,110 @@
+package calculator.utility;
+
+import java.io.Serializable;
+
+/**
+ * 价格和Greeks的计算结果
+ * 单位和计算器一致: vega为1%, theta为1天(按365天计算), rho为1个BP;
+ * vanna为波动率变动1%时delta的变动, volga为波动率变动1%时(1%的)vega的变动, charm为1天delta的变动;
+ * 没有计算的值为NaN;
+ *
+ * @author liangcy
+ */
+public class Greeks implements Serializable {
+    private double price = Double.NaN;
+    private double delta = Double.NaN;
+    private double gamma = Double.NaN;
+    private double vega = Double.NaN;
+    private double theta = Double.NaN;
+    private double rho = Double.NaN;
+    private double vanna = Double.NaN;
+    private double volga = Double.NaN;
+    private double charm = Double.NaN;
+
+    public double getPrice() {
+        return price;
+    }
+
+    public void setPrice(double price) {
+        this.price = price;
+    }
+
+    public double getDelta() {
+        return delta;
+    }
+
+    public void setDelta(double delta) {
+        this.delta = delta;
+    }
+
+    public double getGamma() {
+        return gamma;
+    }
+
+    public void setGamma(double gamma) {
+        this.gamma = gamma;
+    }
+
+    public double getVega() {
+        return vega;
+    }
+
+    public void setVega(double vega) {
+        this.vega = vega;
+    }
+
+    public double getTheta() {
+        return theta;
+    }
+
+    public void setTheta(double theta) {
+        this.theta = theta;
+    }
+
+    public double getRho() {
+        return rho;
+    }
+
+    public void setRho(double rho) {
+        this.rho = rho;
+    }
+
+    public double getVanna() {
+        return vanna;
+    }
+
+    public void setVanna(double vanna) {
+        this.vanna = vanna;
+    }
+
+    public double getVolga() {
+        return volga;
+    }
+
+    public void setVolga(double volga) {
+        this.volga = volga;
+    }
+
+    public double getCharm() {
+        return charm;
+    }
+
+    public void setCharm(double charm) {
+        this.charm = charm;
+    }
+
+    @Override
+    public String toString() {
+        String sep = ConstantString.SEPARATOR;
+        return "greeks: " +
+                "price: " + getPrice() + sep +
+                "delta: " + getDelta() + sep +
+                "gamma: " + getGamma() + sep +
+                "vega: " + getVega() + sep +
+                "theta: " + getTheta() + sep +
+                "rho: " + getRho() + sep +
+                "vanna: " + getVanna() + sep +
+                "volga: " + getVolga() + sep +
+                "charm: " + getCharm();
+    }
+}
@@ -0,0 +1,252 @@
+package calculator.utility;
+
+/**
+ * Black公式的隐含波动率, 按Jäckel的思路在标准化的Black价格上求解:
+ * x = ln(F/K), s = vol*sqrt(T), b = price / (discount*sqrt(F*K));
+ * 实值期权先用平价公式转成虚值, 再利用对称性统一成x <= 0的看涨期权;
+ * 以拐点s = sqrt(2|x|)为界分成低价区和高价区, 低价区用渐近展开给初值并对ln(b)迭代, 高价区对b迭代;
+ * 迭代用三阶Householder方法, 一般2到3次达到机器精度(深度虚值时是价格本身的精度);
+ * 迭代始终保持包含根的区间, 跳出区间时改用二分, 上限未知时每步最多加倍; 返回前都检查价格残差, 没有收敛时返回NaN;
+ * 全部是基本类型运算, 不分配对象;
+ *
+ * @author liangcy
+ * @reference Jäckel, P. (2015). Let's Be Rational. Wilmott Magazine, 2015(75), 40-53.
+ */
+public final class ImpliedVolatility {
+    /**
+     * 迭代次数上限, 正常只需要2到3次, 初值不好时会退化为二分;
+     */
+    private static final int MAX_ITERATIONS = 100;
+
+    /**
+     * 三阶收敛, 相对步长小于1e-6时, 迭代后的误差已经远小于机器精度, 不用再算一次确认;
+     */
+    private static final double TOLERANCE = 1e-6;
+
+    /**
+     * 根所在区间的相对宽度小于这个值时停止;
+     */
+    private static final double BRACKET_TOLERANCE = 4 * ConstantNumber.EPS;
+
+    /**
+     * 结束时标准化价格的相对残差上限, 超过说明没有收敛;
+     */
+    private static final double RESIDUAL_TOLERANCE = 1e-8;
+
+    private ImpliedVolatility() {
+    }
+
+    /**
+     * @param price    期权价格
+     * @param forward  远期价格
+     * @param strike   行权价
+     * @param t        到期时间
+     * @param discount 贴现因子
+     * @param isCall   是否看涨
+     * @return 隐含波动率; 参数非法, 价格超出无套利区间或者没有收敛时为NaN, 价格等于内在价值时为0
+     */
+    public static double black(double price, double forward, double strike, double t, double discount,
+                               boolean isCall) {
+        return black(price, forward, strike, t, discount, isCall, Double.NaN);
+    }
+
+    /**
+     * @param initialVol 迭代初值, 例如相邻行权价的隐含波动率; NaN或者非正数时用内部的初值
+     * @see #black(double, double, double, double, double, boolean)
+     */
+    public static double black(double price, double forward, double strike, double t, double discount,
+                               boolean isCall, double initialVol) {
+        if (!(forward > 0 && strike > 0 && t > 0 && discount > 0)) {
+            return Double.NaN;
+        }
+        double sqrtT = Math.sqrt(t);
+        double beta = price / (discount * Math.sqrt(forward * strike));
+        double x = Math.log(forward / strike);
+        double s = normalizedImpliedVolatility(beta, x, isCall, initialVol * sqrtT);
+        return s / sqrtT;
+    }
+
+    /**
+     * @param forward  远期价格
+     * @param strike   行权价
+     * @param vol      波动率, 为0时是贴现后的内在价值
+     * @param t        到期时间
+     * @param discount 贴现因子
+     * @param isCall   是否看涨
+     * @return Black公式的期权价格
+     */
+    public static double blackPrice(double forward, double strike, double vol, double t, double discount,
+                                    boolean isCall) {
+        int theta = isCall ? 1 : -1;
+        double s = vol * Math.sqrt(t);
+        if (s <= 0) {
+            return discount * Math.max(theta * (forward - strike), 0);
+        }
+        double d1 = Math.log(forward / strike) / s + s / 2;
+        double d2 = d1 - s;
+        return discount * theta * (forward * CalculateUtil.normalCDF(theta * d1) -
+                strike * CalculateUtil.normalCDF(theta * d2));
+    }
+
+    /**
+     * @param beta         标准化的Black价格
+     * @param x            ln(F/K)
+     * @param isCall       是否看涨
+     * @param initialGuess s的迭代初值, NaN或者非正数时用内部的初值
+     * @return 标准化的隐含波动率s = vol*sqrt(T), 没有收敛时为NaN
+     */
+    public static double normalizedImpliedVolatility(double beta, double x, boolean isCall, double initialGuess) {
+        int theta = isCall ? 1 : -1;
+        // 实值期权减去内在价值后就是对应的虚值期权
+        if (theta * x > 0) {
+            beta -= theta * 2 * Math.sinh(x / 2);
+        }
+        x = -Math.abs(x);
+        double bMax = Math.exp(x / 2);
+        if (!(beta >= 0) || beta >= bMax) {
+            return Double.NaN;
+        }
+        if (beta == 0) {
+            return 0;
+        }
+        double sc = Math.sqrt(-2 * x);
+        boolean isLower = x < 0 && beta < normalizedBlackCall(x, sc);
+        double s;
+        if (initialGuess > 0 && !Double.isInfinite(initialGuess)) {
+            s = initialGuess;
+        } else if (isLower) {
+            s = lowerInitialGuess(beta, x, sc);
+        } else {
+            s = upperInitialGuess(beta, x);
+        }
+        double logBeta = Math.log(beta);
+        // b对s单调递增, [lower, upper]始终包含根; 上限没有确定前为无穷大
+        double lower = 0;
+        double upper = Double.POSITIVE_INFINITY;
+        // 前两次的步长, 步长没有减半说明迭代进展太慢
+        double lastStep = Double.POSITIVE_INFINITY;
+        double secondLastStep = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < MAX_ITERATIONS; i++) {
+            double b = normalizedBlackCall(x, s);
+            // 价格为NaN或者无穷大时按超过根处理
+            if (b > beta || Double.isNaN(b) || Double.isInfinite(b)) {
+                upper = s;
+            } else if (b < beta) {
+                lower = s;
+            } else {
+                break;
+            }
+            if (upper - lower <= BRACKET_TOLERANCE * s) {
+                break;
+            }
+            double next = Double.NaN;
+            // 价格下溢为0, 达到上界或者不是有限值时只能靠区间缩小
+            if (b > 0 && b < bMax) {
+                double vega = normalizedVega(x, s);
+                // b''/b', b'''/b'
+                double a = x * x / (s * s * s) - s / 4;
+                double c = a * a - 3 * x * x / (s * s * s * s) - 0.25;
+                double newton;
+                if (isLower) {
+                    double g = vega / b;
+                    newton = -(Math.log(b) - logBeta) / g;
+                    c = c - 3 * a * g + 2 * g * g;
+                    a = a - g;
+                } else {
+                    newton = -(b - beta) / vega;
+                }
+                double step = newton * (1 + a * newton / 2) / (1 + a * newton + c * newton * newton / 6);
+                if (Double.isNaN(step) || Double.isInfinite(step)) {
+                    step = newton;
+                }
+                next = s + step;
+                // 上限未知时步长不超过加倍, 防止vega接近0时跳得太远
+                if (Double.isInfinite(upper)) {
+                    next = Math.min(next, 2 * Math.max(s, sc));
+                }
+            }
+            double step = Math.abs(next - s);
+            boolean isInside = next > lower && next < upper;
+            boolean isSmallStep = step <= TOLERANCE * s;
+            if (isInside && isSmallStep && isConverged(beta, x, next)) {
+                return next;
+            }
+            // 跳出区间, 进展太慢, 或者步长很小但残差不够小时改用二分(对数空间), 上限未知时加倍
+            if (!isInside || isSmallStep || step > secondLastStep / 2) {
+                if (Double.isInfinite(upper)) {
+                    next = 2 * Math.max(s, sc);
+                } else {
+                    next = lower > 0 ? Math.sqrt(lower * upper) : upper / 2;
+                }
+                step = Math.abs(next - s);
+            }
+            secondLastStep = lastStep;
+            lastStep = step;
+            s = next;
+        }
+        return isConverged(beta, x, s) ? s : Double.NaN;
+    }
+
+    /**
+     * 残差检查: 价格相对误差足够小时认为收敛;
+     */
+    private static boolean isConverged(double beta, double x, double s) {
+        return Math.abs(normalizedBlackCall(x, s) - beta) <= RESIDUAL_TOLERANCE * beta;
+    }
+
+    /**
+     * @return x <= 0时标准化的Black看涨价格
+     */
+    static double normalizedBlackCall(double x, double s) {
+        double d1 = x / s + s / 2;
+        double d2 = x / s - s / 2;
+        return Math.exp(x / 2) * CalculateUtil.normalCDF(d1) - Math.exp(-x / 2) * CalculateUtil.normalCDF(d2);
+    }
+
+    /**
+     * @return 标准化的Black价格对s的导数
+     */
+    private static double normalizedVega(double x, double s) {
+        double h = x / s;
+        double t = s / 2;
+        return Math.exp(-0.5 * (h * h + t * t)) / ConstantNumber.SQRT_TWO_PI;
+    }
+
+    /**
+     * s较小时ln(b) ≈ L(s) = ln(s^3/(x^2*sqrt(2π))) - x^2/(2s^2) - s^2/8, 在(0, sc]上精确求解L(s) = ln(beta);
+     * s^2 < 12时L单调递增, 用带二分保护的牛顿法;
+     */
+    private static double lowerInitialGuess(double beta, double x, double sc) {
+        double logBeta = Math.log(beta);
+        double constant = Math.log(x * x * ConstantNumber.SQRT_TWO_PI);
+        double lower = 0;
+        double upper = sc;
+        double s = Math.min(-x / Math.sqrt(-2 * logBeta), sc);
+        for (int i = 0; i < 50; i++) {
+            double f = 3 * Math.log(s) - constant - x * x / (2 * s * s) - s * s / 8 - logBeta;
+            if (f > 0) {
+                upper = s;
+            } else {
+                lower = s;
+            }
+            double next = s - f / (3 / s + x * x / (s * s * s) - s / 4);
+            if (!(next > lower && next < upper)) {
+                next = (lower + upper) / 2;
+            }
+            if (Math.abs(next - s) <= 1e-8 * s) {
+                return next;
+            }
+            s = next;
+        }
+        return s;
+    }
+
+    /**
+     * s较大时b ≈ exp(x/2)*N(s/2) - exp(-x/2)*N(-s/2), 可以直接反解; x = 0时是精确的;
+     */
+    private static double upperInitialGuess(double beta, double x) {
+        double bMax = Math.exp(x / 2);
+        double u = (bMax - beta) / (bMax + Math.exp(-x / 2));
+        return Math.max(-2 * CalculateUtil.normalInverseCDF(u), Math.sqrt(-2 * x));
+    }
+}
@@ -0,0 +1,105 @@
+package calculator.utility;
+
+import option.BaseSingleOption;
+
+/**
+ * 对数正态路径: 在对数空间累加, 每一步的漂移和扩散项预先算好;
+ * 只需要到期价格时整条路径只做一次指数运算;
+ *
+ * @author liangcy
+ */
+public class LogEulerPathKernel {
+    private final int nodes;
+    private final double spotPrice;
+    private final double logSpotPrice;
+    /**
+     * 每一步的对数漂移(b - vol^2/2)*dt和扩散vol*sqrt(dt);
+     */
+    private final double drift;
+    private final double diffusion;
+
+    /**
+     * @param option 用标的价格、无风险利率、分红率、到期时间和波动率
+     * @param nodes  时间步数
+     */
+    public LogEulerPathKernel(BaseSingleOption option, int nodes) {
+        this(option.getUnderlying().getSpotPrice(),
+                option.getUnderlying().getRiskFreeRate() - option.getUnderlying().getDividendRate(),
+                option.getVanillaOptionParams().getVolatility(),
+                option.getVanillaOptionParams().getTimeRemaining(), nodes);
+    }
+
+    /**
+     * @param s     标的价格
+     * @param b     持有成本
+     * @param vol   波动率
+     * @param t     到期时间
+     * @param nodes 时间步数
+     */
+    public LogEulerPathKernel(double s, double b, double vol, double t, int nodes) {
+        double deltaT = t / nodes;
+        this.nodes = nodes;
+        this.spotPrice = s;
+        this.logSpotPrice = Math.log(s);
+        this.drift = (b - vol * vol / 2) * deltaT;
+        this.diffusion = vol * Math.sqrt(deltaT);
+    }
+
+    public int getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @param randomNums 标准正态随机数, 长度为nodes
+     * @param pricePath  路径, 长度为nodes+1
+     */
+    public void fillPath(double[] randomNums, double[] pricePath) {
+        double logPrice = logSpotPrice;
+        pricePath[0] = spotPrice;
+        for (int i = 0; i < nodes; i++) {
+            logPrice += drift + diffusion * randomNums[i];
+            pricePath[i + 1] = Math.exp(logPrice);
+        }
+    }
+
+    /**
+     * 只生成到期价格, 中间的价格不变;
+     *
+     * @param randomNums 标准正态随机数, 长度为nodes
+     * @param pricePath  路径, 长度为nodes+1
+     */
+    public void fillTerminalPrice(double[] randomNums, double[] pricePath) {
+        double sum = 0;
+        for (int i = 0; i < nodes; i++) {
+            sum += randomNums[i];
+        }
+        pricePath[0] = spotPrice;
+        pricePath[nodes] = Math.exp(logSpotPrice + drift * nodes + diffusion * sum);
+    }
+
+    /**
+     * 逐步生成路径, visitor确定收益后不再生成之后的价格;
+     *
+     * @param randomNums 标准正态随机数, 长度为nodes
+     * @param visitor    每条路径从第0个时间点开始读取
+     * @return 期权价格(贴现后)
+     */
+    public double visitPath(double[] randomNums, MonteCarloPathVisitor visitor) {
+        double logPrice = logSpotPrice;
+        int status = visitor.visit(0, spotPrice);
+        int step = 0;
+        while (status == MonteCarloPathVisitor.CONTINUE && step < nodes) {
+            logPrice += drift + diffusion * randomNums[step];
+            step++;
+            status = visitor.visit(step, Math.exp(logPrice));
+        }
+        if (status == MonteCarloPathVisitor.TERMINAL_ONLY && step < nodes) {
+            double sum = 0;
+            for (int i = step; i < nodes; i++) {
+                sum += randomNums[i];
+            }
+            visitor.visit(nodes, Math.exp(logPrice + drift * (nodes - step) + diffusion * sum));
+        }
+        return visitor.payoff();
+    }
+}
@@ -3,12 +3,39 @@ package calculator.utility;
 import option.BaseSingleOption;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * @author liangcy
  */
 public class MonteCarlo {
+    /**
+     * Greeks的计算方法: 扰动参数重新定价/路径导数法/似然比法
+     * 路径导数法只用于收益连续的期权, 其他期权自动改用似然比法;
+     */
+    public static final String GREEK_METHOD_BUMP = "bump";
+    public static final String GREEK_METHOD_PATHWISE = "pathwise";
+    public static final String GREEK_METHOD_LIKELIHOOD_RATIO = "likelihood-ratio";
+    /**
+     * 随机数: 伪随机数/Sobol低差异序列(超过SobolSequence.MAX_DIMENSION的步数用伪随机数补齐)
+     */
+    public static final String RANDOM_NUMBER_PSEUDO = "pseudo";
+    public static final String RANDOM_NUMBER_SOBOL = "sobol";
+    /**
+     * 障碍期权的连续监测修正: 不修正/布朗桥穿越概率/Broadie-Glasserman-Kou平移障碍, 见BarrierMonitor;
+     */
+    public static final String BARRIER_CORRECTION_NONE = "none";
+    public static final String BARRIER_CORRECTION_BROWNIAN_BRIDGE = "brownian-bridge";
+    public static final String BARRIER_CORRECTION_SHIFT = "shift";
     /**
      * nodes 不包含初始的 s0, 实际上 price path 的长度是 nodes+1;
      * [1 - 10,000]
@@ -22,9 +49,58 @@ public class MonteCarlo {
      * 用来计算误差。默认三倍标准差。
      */
     private double monteCarloErrorMult = 3.0;
-
-
-
+    /**
+     * 随机数种子, 为null时每次模拟随机选取;
+     */
+    private Long seed = null;
+    /**
+     * 并行线程数, 为1时在当前线程计算;
+     */
+    private int parallelism = 1;
+    /**
+     * 每块的路径条数, 每块使用独立的随机数流; 分块和线程数无关, 所以同一个种子的结果和线程数无关;
+     */
+    private int chunkSize = 1000;
+    /**
+     * 外部提供的线程池, 不为null时忽略parallelism;
+     */
+    private ExecutorService executorService = null;
+    private String greekMethod = GREEK_METHOD_BUMP;
+    /**
+     * 对偶变量: 每组随机数z和-z各生成一条路径, 取平均作为一个样本;
+     */
+    private boolean antithetic = false;
+    /**
+     * 矩匹配: 每块的随机数在每个时间点上调整为均值0, 方差1;
+     */
+    private boolean momentMatching = false;
+    /**
+     * 控制变量: 用有解析解的期权在同一条路径上的价格修正, 只用于计算价格;
+     */
+    private boolean controlVariate = false;
+    private String randomNumberType = RANDOM_NUMBER_PSEUDO;
+    /**
+     * Sobol序列是否用布朗桥构造路径;
+     */
+    private boolean brownianBridge = true;
+    /**
+     * Sobol序列是否做Owen扰动;
+     */
+    private boolean scrambled = true;
+    /**
+     * 扰动后的Sobol序列重复的次数, 每次用不同的扰动种子, 路径平分; 误差由各次结果的标准差估计;
+     * 每次的路径条数最好是2的幂;
+     */
+    private int numOfReplicates = 8;
+    /**
+     * 自适应模拟: 每轮模拟pathSize条路径, 直到误差(monteCarloErrorMult倍标准误差)达到目标, 或者超过时间预算, 或者达到路径上限;
+     * 目标为0表示不使用; 三个都为0时只模拟一轮;
+     */
+    private double targetError = 0.0;
+    private double targetRelativeError = 0.0;
+    private long timeBudgetMillis = 0;
+    private long maxPathSize = 500000;
+    private String barrierCorrection = BARRIER_CORRECTION_NONE;
 
     public MonteCarlo() {
 
@@ -63,46 +139,570 @@ public class MonteCarlo {
         this.pathSize = pathSize;
     }
 
-    private double[] generateStandardNormalRandomNumber() {
+    public Long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(Long seed) {
+        this.seed = seed;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    public String getGreekMethod() {
+        return greekMethod;
+    }
+
+    public void setGreekMethod(String greekMethod) {
+        this.greekMethod = greekMethod;
+    }
+
+    public boolean isAntithetic() {
+        return antithetic;
+    }
+
+    public void setAntithetic(boolean antithetic) {
+        this.antithetic = antithetic;
+    }
+
+    public boolean isMomentMatching() {
+        return momentMatching;
+    }
+
+    public void setMomentMatching(boolean momentMatching) {
+        this.momentMatching = momentMatching;
+    }
+
+    public boolean isControlVariate() {
+        return controlVariate;
+    }
+
+    public void setControlVariate(boolean controlVariate) {
+        this.controlVariate = controlVariate;
+    }
+
+    public String getRandomNumberType() {
+        return randomNumberType;
+    }
+
+    public void setRandomNumberType(String randomNumberType) {
+        this.randomNumberType = randomNumberType;
+    }
+
+    public boolean isBrownianBridge() {
+        return brownianBridge;
+    }
+
+    public void setBrownianBridge(boolean brownianBridge) {
+        this.brownianBridge = brownianBridge;
+    }
+
+    public boolean isScrambled() {
+        return scrambled;
+    }
+
+    public void setScrambled(boolean scrambled) {
+        this.scrambled = scrambled;
+    }
+
+    public int getNumOfReplicates() {
+        return numOfReplicates;
+    }
+
+    public void setNumOfReplicates(int numOfReplicates) {
+        this.numOfReplicates = Math.max(1, numOfReplicates);
+    }
+
+    public double getTargetError() {
+        return targetError;
+    }
+
+    public void setTargetError(double targetError) {
+        this.targetError = Math.max(0, targetError);
+    }
+
+    public double getTargetRelativeError() {
+        return targetRelativeError;
+    }
+
+    public void setTargetRelativeError(double targetRelativeError) {
+        this.targetRelativeError = Math.max(0, targetRelativeError);
+    }
+
+    public long getTimeBudgetMillis() {
+        return timeBudgetMillis;
+    }
+
+    public void setTimeBudgetMillis(long timeBudgetMillis) {
+        this.timeBudgetMillis = Math.max(0, timeBudgetMillis);
+    }
+
+    public long getMaxPathSize() {
+        return maxPathSize;
+    }
+
+    public void setMaxPathSize(long maxPathSize) {
+        this.maxPathSize = Math.max(1, maxPathSize);
+    }
+
+    public String getBarrierCorrection() {
+        return barrierCorrection;
+    }
+
+    public void setBarrierCorrection(String barrierCorrection) {
+        this.barrierCorrection = barrierCorrection;
+    }
+
+    /**
+     * @return 是否修正连续监测的障碍
+     */
+    public boolean isBarrierCorrected() {
+        return !BARRIER_CORRECTION_NONE.equals(barrierCorrection);
+    }
+
+    public boolean isAdaptive() {
+        return targetError > 0 || targetRelativeError > 0 || timeBudgetMillis > 0;
+    }
+
+    private boolean isSobol() {
+        return RANDOM_NUMBER_SOBOL.equals(randomNumberType);
+    }
+
+    /**
+     * 流式模拟期权价格, 每个线程只保存一条路径, 内存为O(nodes);
+     *
+     * @param option
+     * @return 期权价格的统计结果, 维数为1
+     */
+    public MonteCarloStatistics simulate(BaseSingleOption option) throws InterruptedException, ExecutionException {
+        return simulate(optionPriceEvaluator(option), 1);
+    }
+
+    /**
+     * 分块流式模拟, 停止条件按第一个结果的均值和标准误差;
+     *
+     * @param evaluatorSupplier 每块各自生成一个evaluator
+     * @param dimension         每条路径的结果个数
+     * @return 统计结果
+     */
+    public MonteCarloStatistics simulate(Supplier<MonteCarloPathEvaluator> evaluatorSupplier, int dimension)
+            throws InterruptedException, ExecutionException {
+        return simulate(evaluatorSupplier, dimension,
+                statistics -> new double[]{statistics.getMean(0), statistics.getStandardError(0)});
+    }
+
+    /**
+     * 分块流式模拟; 每块的随机数流在开始前按顺序从种子拆分, 结果按块的顺序合并, 所以同一个种子的结果和线程数无关;
+     * 扰动的Sobol序列重复numOfReplicates次, 每次的均值作为一个样本;
+     * 自适应模拟时每轮结束后检查误差, 每次重复的Sobol序列接着上一轮继续;
+     *
+     * @param evaluatorSupplier 每块各自生成一个evaluator
+     * @param dimension         每条路径的结果个数
+     * @param estimator         根据统计结果计算{估计值, 标准误差}, 用于自适应模拟的停止条件
+     * @return 统计结果
+     */
+    public MonteCarloStatistics simulate(Supplier<MonteCarloPathEvaluator> evaluatorSupplier, int dimension,
+                                         Function<MonteCarloStatistics, double[]> estimator)
+            throws InterruptedException, ExecutionException {
+        long startTime = System.nanoTime();
+        SplittableRandom random = seed == null ? new SplittableRandom() : new SplittableRandom(seed);
+        int replicates = isSobol() && scrambled ? Math.min(numOfReplicates, pathSize) : 1;
+        int replicatePathSize = pathSize / replicates;
+        Long[] scrambleSeeds = new Long[replicates];
+        long[] sequenceStarts = new long[replicates];
+        MonteCarloStatistics[] replicateStatistics = new MonteCarloStatistics[replicates];
+        for (int r = 0; r < replicates; r++) {
+            scrambleSeeds[r] = isSobol() && scrambled ? random.nextLong() : null;
+            //不扰动的Sobol序列第0个点全为0, 从第1个点开始;
+            sequenceStarts[r] = scrambleSeeds[r] == null ? 1 : 0;
+            replicateStatistics[r] = new MonteCarloStatistics(dimension);
+        }
+        //每轮实际模拟的路径条数
+        long roundPaths = (long) replicatePathSize * replicates;
+        long numOfPaths = 0;
+        //没有外部线程池时每次模拟只创建一个线程池, 各轮共用
+        ExecutorService pool = executorService;
+        if (pool == null && parallelism > 1) {
+            pool = new ForkJoinPool(parallelism);
+        }
+        try {
+            while (true) {
+                List<Callable<MonteCarloStatistics>> tasks = new ArrayList<>();
+                int[] replicateOfTask = new int[(replicatePathSize + chunkSize - 1) / chunkSize * replicates];
+                for (int r = 0; r < replicates; r++) {
+                    for (int start = 0; start < replicatePathSize; start += chunkSize) {
+                        SplittableRandom chunkRandom = random.split();
+                        int chunkPaths = Math.min(chunkSize, replicatePathSize - start);
+                        Long scrambleSeed = scrambleSeeds[r];
+                        long sequenceStart = sequenceStarts[r];
+                        sequenceStarts[r] += antithetic ? (chunkPaths + 1) / 2 : chunkPaths;
+                        replicateOfTask[tasks.size()] = r;
+                        tasks.add(() -> simulateChunk(evaluatorSupplier.get(), dimension,
+                                new RandomNumberSource(chunkRandom, sequenceStart, scrambleSeed), chunkPaths));
+                    }
+                }
+                List<MonteCarloStatistics> chunkResults = invokeAll(pool, tasks);
+                for (int i = 0; i < chunkResults.size(); i++) {
+                    replicateStatistics[replicateOfTask[i]].merge(chunkResults.get(i));
+                }
+                numOfPaths += roundPaths;
+
+                MonteCarloStatistics statistics = new MonteCarloStatistics(dimension);
+                for (MonteCarloStatistics replicate : replicateStatistics) {
+                    if (replicates > 1) {
+                        statistics.addReplicate(replicate);
+                    } else {
+                        statistics.merge(replicate);
+                    }
+                }
+                if (isFinished(statistics, estimator, numOfPaths, roundPaths, startTime)) {
+                    return statistics;
+                }
+            }
+        } finally {
+            if (pool != executorService) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private boolean isFinished(MonteCarloStatistics statistics, Function<MonteCarloStatistics, double[]> estimator,
+                               long numOfPaths, long roundPaths, long startTime) {
+        if (!isAdaptive() || numOfPaths + roundPaths > maxPathSize) {
+            return true;
+        }
+        if (timeBudgetMillis > 0 && (System.nanoTime() - startTime) / 1000000 >= timeBudgetMillis) {
+            return true;
+        }
+        //样本太少时标准误差不可靠;
+        if ((targetError <= 0 && targetRelativeError <= 0) || statistics.getCount() < 2) {
+            return false;
+        }
+        double[] estimate = estimator.apply(statistics);
+        double error = estimate[1] * monteCarloErrorMult;
+        return (targetError > 0 && error <= targetError) ||
+                (targetRelativeError > 0 && error <= targetRelativeError * Math.abs(estimate[0]));
+    }
+
+    /**
+     * @param pool 为null时在当前线程按顺序计算
+     * @return 按任务顺序排列的结果
+     */
+    private static List<MonteCarloStatistics> invokeAll(ExecutorService pool,
+                                                        List<Callable<MonteCarloStatistics>> tasks)
+            throws InterruptedException, ExecutionException {
+        List<MonteCarloStatistics> results = new ArrayList<>(tasks.size());
+        if (pool != null) {
+            for (Future<MonteCarloStatistics> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } else {
+            for (Callable<MonteCarloStatistics> task : tasks) {
+                try {
+                    results.add(task.call());
+                } catch (Exception e) {
+                    throw new ExecutionException(e);
+                }
+            }
+        }
+        return results;
+    }
+
+    private MonteCarloStatistics simulateChunk(MonteCarloPathEvaluator evaluator, int dimension,
+                                               RandomNumberSource source, int numOfPaths) {
+        double[] randomNums = new double[nodes];
+        double[] values = new double[dimension];
+        double[] antitheticValues = new double[dimension];
+        MonteCarloStatistics statistics = new MonteCarloStatistics(dimension);
+        int numOfSamples = antithetic ? (numOfPaths + 1) / 2 : numOfPaths;
+        double[][] moments = null;
+        if (momentMatching && numOfSamples > 1) {
+            //先生成一遍随机数计算均值和标准差, 再重新生成同样的随机数, 内存仍为O(nodes);
+            moments = randomNumberMoments(source.copy(), numOfSamples);
+        }
+        for (int i = 0; i < numOfSamples; i++) {
+            source.fill(randomNums);
+            if (moments != null) {
+                for (int j = 0; j < nodes; j++) {
+                    randomNums[j] = (randomNums[j] - moments[0][j]) / moments[1][j];
+                }
+            }
+            evaluator.evaluate(randomNums, values);
+            statistics.addPath(values[0]);
+            if (antithetic) {
+                for (int j = 0; j < nodes; j++) {
+                    randomNums[j] = -randomNums[j];
+                }
+                evaluator.evaluate(randomNums, antitheticValues);
+                statistics.addPath(antitheticValues[0]);
+                for (int j = 0; j < dimension; j++) {
+                    values[j] = (values[j] + antitheticValues[j]) / 2;
+                }
+            }
+            statistics.add(values);
+        }
+        return statistics;
+    }
+
+    /**
+     * @return {每个时间点随机数的均值, 标准差}
+     */
+    private double[][] randomNumberMoments(RandomNumberSource source, int numOfSamples) {
+        double[] randomNums = new double[nodes];
+        double[] mean = new double[nodes];
+        double[] sd = new double[nodes];
+        for (int i = 0; i < numOfSamples; i++) {
+            source.fill(randomNums);
+            for (int j = 0; j < nodes; j++) {
+                mean[j] += randomNums[j];
+                sd[j] += randomNums[j] * randomNums[j];
+            }
+        }
+        for (int j = 0; j < nodes; j++) {
+            mean[j] /= numOfSamples;
+            sd[j] = Math.sqrt(Math.max(sd[j] / numOfSamples - mean[j] * mean[j], 0));
+            if (sd[j] == 0) {
+                sd[j] = 1;
+            }
+        }
+        return new double[][]{mean, sd};
+    }
+
+    /**
+     * @param option
+     * @return 每块各自的evaluator, 结果为{期权价格, 控制变量价格}
+     */
+    public Supplier<MonteCarloPathEvaluator> controlVariateEvaluator(BaseSingleOption option) {
+        return () -> {
+            LogEulerPathKernel kernel = new LogEulerPathKernel(option, nodes);
+            MonteCarloPathVisitor visitor = pathVisitor(option);
+            MonteCarloPayoff payoff = option.monteCarloPayoff(nodes);
+            MonteCarloPayoff controlVariate = option.monteCarloControlVariatePayoff(nodes);
+            double[] pricePath = new double[nodes + 1];
+            return (randomNums, values) -> {
+                fillPath(option, kernel, randomNums, pricePath);
+                values[0] = visitor != null ? visitPath(pricePath, visitor) : payoff.price(pricePath);
+                values[1] = controlVariate.price(pricePath);
+            };
+        };
+    }
+
+    /**
+     * 同一组随机数下, 每个期权各自生成路径并计算价格(公共随机数);
+     * 有visitor的期权逐步生成路径, 收益确定后提前结束;
+     *
+     * @param options 期权, 结果和options一一对应
+     * @return 每块各自的evaluator, 路径缓存重复使用
+     */
+    public Supplier<MonteCarloPathEvaluator> optionPriceEvaluator(BaseSingleOption... options) {
+        return () -> {
+            LogEulerPathKernel[] kernels = new LogEulerPathKernel[options.length];
+            MonteCarloPathVisitor[] visitors = new MonteCarloPathVisitor[options.length];
+            MonteCarloPayoff[] payoffs = new MonteCarloPayoff[options.length];
+            for (int j = 0; j < options.length; j++) {
+                kernels[j] = new LogEulerPathKernel(options[j], nodes);
+                visitors[j] = pathVisitor(options[j]);
+                payoffs[j] = visitors[j] == null ? options[j].monteCarloPayoff(nodes) : null;
+            }
+            double[] pricePath = new double[nodes + 1];
+            return (randomNums, values) -> {
+                for (int j = 0; j < options.length; j++) {
+                    if (visitors[j] != null) {
+                        values[j] = kernels[j].visitPath(randomNums, visitors[j]);
+                    } else {
+                        fillPath(options[j], kernels[j], randomNums, pricePath);
+                        values[j] = payoffs[j].price(pricePath);
+                    }
+                }
+            };
+        };
+    }
+
+    /**
+     * 在计算价格的同一条路径上用路径导数法或似然比法计算delta, vega和rho;
+     * 似然比法的delta只用第一步的随机数, 步数越多方差越大;
+     * 似然比法只对路径密度求导, 障碍修正时收益直接依赖波动率和期初价格, 结果有偏, 计算器会改用扰动法;
+     * rho假设在到期日贴现;
+     *
+     * @param option
+     * @return 每块各自的evaluator, 结果为{价格, delta, vega, rho}, 没有换算单位
+     */
+    public Supplier<MonteCarloPathEvaluator> greekEvaluator(BaseSingleOption option) {
+        boolean isPathwise = GREEK_METHOD_PATHWISE.equals(greekMethod) && option.hasMonteCarloPathwiseMethod();
+        double s = option.getUnderlying().getSpotPrice();
+        double t = option.getVanillaOptionParams().getTimeRemaining();
+        double vol = option.getVanillaOptionParams().getVolatility();
+        double carrySensitivity = option.getUnderlying().getCostOfCarryRateSensitivity();
+        double deltaT = t / nodes;
+        double sqrtDeltaT = Math.sqrt(deltaT);
+        return () -> {
+            LogEulerPathKernel kernel = new LogEulerPathKernel(option, nodes);
+            MonteCarloPathVisitor visitor = isPathwise ? null : pathVisitor(option);
+            MonteCarloPayoff payoff = option.monteCarloPayoff(nodes);
+            double[] pricePath = new double[nodes + 1];
+            double[] pathDerivative = new double[nodes + 1];
+            return (randomNums, values) -> {
+                if (visitor == null) {
+                    fillPath(option, kernel, randomNums, pricePath);
+                }
+                double price;
+                double delta = 0;
+                double vega = 0;
+                double rho = 0;
+                if (isPathwise) {
+                    Arrays.fill(pathDerivative, 0);
+                    price = option.monteCarloPathwiseDerivative(pricePath, pathDerivative);
+                    //dS(i)/dS0 = S(i)/S0, dS(i)/dvol = S(i)*(W(i)-vol*t(i)), dS(i)/dr = S(i)*t(i);
+                    double brownian = 0;
+                    for (int i = 0; i <= nodes; i++) {
+                        if (i > 0) {
+                            brownian += randomNums[i - 1] * sqrtDeltaT;
+                        }
+                        double derivative = pathDerivative[i] * pricePath[i];
+                        delta += derivative;
+                        vega += derivative * (brownian - vol * deltaT * i);
+                        rho += derivative * deltaT * i * carrySensitivity;
+                    }
+                    delta /= s;
+                } else {
+                    price = visitor != null ? kernel.visitPath(randomNums, visitor) : payoff.price(pricePath);
+                    //对数正态转移密度的得分函数;
+                    double sumOfRandomNums = 0;
+                    for (int i = 0; i < nodes; i++) {
+                        double z = randomNums[i];
+                        vega += (z * z - 1) / vol - z * sqrtDeltaT;
+                        sumOfRandomNums += z;
+                    }
+                    delta = price * randomNums[0] / (s * vol * sqrtDeltaT);
+                    vega *= price;
+                    rho = price * sumOfRandomNums * sqrtDeltaT * carrySensitivity / vol;
+                }
+                values[0] = price;
+                values[1] = delta;
+                values[2] = vega;
+                values[3] = rho - t * price;
+            };
+        };
+    }
+
+    /**
+     * 把两组evaluator的结果拼在一起, 在同一条路径上计算;
+     */
+    public static Supplier<MonteCarloPathEvaluator> concat(Supplier<MonteCarloPathEvaluator> first, int firstDimension,
+                                                           Supplier<MonteCarloPathEvaluator> second, int secondDimension) {
+        return () -> {
+            MonteCarloPathEvaluator firstEvaluator = first.get();
+            MonteCarloPathEvaluator secondEvaluator = second.get();
+            double[] firstValues = new double[firstDimension];
+            double[] secondValues = new double[secondDimension];
+            return (randomNums, values) -> {
+                firstEvaluator.evaluate(randomNums, firstValues);
+                secondEvaluator.evaluate(randomNums, secondValues);
+                System.arraycopy(firstValues, 0, values, 0, firstDimension);
+                System.arraycopy(secondValues, 0, values, firstDimension, secondDimension);
+            };
+        };
+    }
+
+    private double[] generateStandardNormalRandomNumber(RandomNumberGenerator random) {
         double[] result = new double[nodes];
-        for (int i = 0; i < nodes; i++) {
-            result[i] = CalculateUtil.normalRandom();
+        if (random == null) {
+            for (int i = 0; i < nodes; i++) {
+                result[i] = CalculateUtil.normalRandom();
+            }
+        } else {
+            random.fillGaussian(result);
         }
         return result;
     }
 
+    /**
+     * 设置了种子时结果可以重复;
+     */
     public List<double[]> generateStandardNormalRandomNumberList() {
+        RandomNumberGenerator random = seed == null ? null : new Xoshiro256StarStar(seed);
         List<double[]> list = new ArrayList<>(pathSize);
         for (int i = 0; i < pathSize; i++) {
-            list.add(generateStandardNormalRandomNumber());
+            list.add(generateStandardNormalRandomNumber(random));
         }
         return list;
     }
 
     public List<double[]> generateMonteCarloPathList(BaseSingleOption option, List<double[]> randomNumsList) {
+        LogEulerPathKernel kernel = new LogEulerPathKernel(option, nodes);
         List<double[]> list = new ArrayList<>(randomNumsList.size());
         for (double[] randomNums : randomNumsList) {
-            list.add(generateMonteCarloPath(option, randomNums));
+            double[] pricePath = new double[nodes + 1];
+            kernel.fillPath(randomNums, pricePath);
+            list.add(pricePath);
         }
         return list;
     }
 
-    private double[] generateMonteCarloPath(BaseSingleOption option, double[] randomNums) {
-        double s = option.getUnderlying().getSpotPrice();
-        double r = option.getUnderlying().getRiskFreeRate();
-        double q = option.getUnderlying().getDividendRate();
-        double t = option.getVanillaOptionParams().getTimeRemaining();
-        double vol = option.getVanillaOptionParams().getVolatility();
-        double deltaT = t / nodes;
-        double[] pricePath = new double[nodes + 1];
-        pricePath[0] = s;
-        //create log normal return using random numbers;
-        double rtn;
-        for (int i = 0; i < nodes; i++) {
-            rtn = randomNums[i] * vol * Math.sqrt(deltaT) + ((r - q) - vol * vol / 2) * deltaT;
-            pricePath[i + 1] = pricePath[i] * Math.exp(rtn);
+    /**
+     * 生成路径, 不分配内存;
+     *
+     * @param option
+     * @param randomNums 标准正态随机数, 长度为nodes
+     * @param pricePath  路径, 长度为nodes+1
+     */
+    public void fillMonteCarloPath(BaseSingleOption option, double[] randomNums, double[] pricePath) {
+        new LogEulerPathKernel(option, nodes).fillPath(randomNums, pricePath);
+    }
+
+    /**
+     * 用已经生成的路径计算visitor的收益;
+     */
+    private static double visitPath(double[] pricePath, MonteCarloPathVisitor visitor) {
+        int last = pricePath.length - 1;
+        int step = 0;
+        int status = visitor.visit(0, pricePath[0]);
+        while (status == MonteCarloPathVisitor.CONTINUE && step < last) {
+            step++;
+            status = visitor.visit(step, pricePath[step]);
+        }
+        if (status == MonteCarloPathVisitor.TERMINAL_ONLY && step < last) {
+            visitor.visit(last, pricePath[last]);
+        }
+        return visitor.payoff();
+    }
+
+    private MonteCarloPathVisitor pathVisitor(BaseSingleOption option) {
+        return option.hasMonteCarloPathVisitor() ? option.monteCarloPathVisitor(nodes, barrierCorrection) : null;
+    }
+
+    /**
+     * 收益只和到期价格有关时只生成到期价格;
+     */
+    private static void fillPath(BaseSingleOption option, LogEulerPathKernel kernel, double[] randomNums,
+                                 double[] pricePath) {
+        if (option.isMonteCarloTerminalPayoff()) {
+            kernel.fillTerminalPrice(randomNums, pricePath);
+        } else {
+            kernel.fillPath(randomNums, pricePath);
         }
-        return pricePath;
     }
 
     public static double[] getTimePoints(double t, double[] pricePath) {
@@ -113,4 +713,65 @@ public class MonteCarlo {
         return timePoints;
     }
 
+    /**
+     * 一块路径的标准正态随机数来源: 伪随机数, 或从第sequenceStart个点开始的Sobol序列;
+     */
+    private class RandomNumberSource {
+        private final long randomSeed;
+        private final long sequenceStart;
+        private final Long scrambleSeed;
+        private final RandomNumberGenerator random;
+        private final SobolSequence sobol;
+        private final BrownianBridge bridge;
+        private final double[] uniforms;
+        private final double[] pseudoRandomNums;
+
+        RandomNumberSource(SplittableRandom chunkRandom, long sequenceStart, Long scrambleSeed) {
+            this(chunkRandom.nextLong(), sequenceStart, scrambleSeed);
+        }
+
+        private RandomNumberSource(long randomSeed, long sequenceStart, Long scrambleSeed) {
+            this.randomSeed = randomSeed;
+            this.sequenceStart = sequenceStart;
+            this.scrambleSeed = scrambleSeed;
+            this.random = new Xoshiro256StarStar(randomSeed);
+            if (isSobol()) {
+                sobol = new SobolSequence(Math.min(nodes, SobolSequence.MAX_DIMENSION), scrambleSeed);
+                sobol.skipTo(sequenceStart);
+                uniforms = new double[sobol.getDimension()];
+                pseudoRandomNums = new double[nodes - uniforms.length];
+                bridge = brownianBridge && nodes > 1 ? new BrownianBridge(nodes) : null;
+            } else {
+                sobol = null;
+                uniforms = null;
+                pseudoRandomNums = null;
+                bridge = null;
+            }
+        }
+
+        /**
+         * @return 从头开始生成同样随机数的来源
+         */
+        RandomNumberSource copy() {
+            return new RandomNumberSource(randomSeed, sequenceStart, scrambleSeed);
+        }
+
+        void fill(double[] randomNums) {
+            if (sobol == null) {
+                CalculateUtil.fillNormalRandom(random, randomNums);
+                return;
+            }
+            sobol.nextPoint(uniforms);
+            for (int j = 0; j < uniforms.length; j++) {
+                randomNums[j] = CalculateUtil.normalInverseCDF(uniforms[j]);
+            }
+            if (pseudoRandomNums.length > 0) {
+                CalculateUtil.fillNormalRandom(random, pseudoRandomNums);
+                System.arraycopy(pseudoRandomNums, 0, randomNums, uniforms.length, pseudoRandomNums.length);
+            }
+            if (bridge != null) {
+                bridge.transform(randomNums, randomNums);
+            }
+        }
+    }
 }
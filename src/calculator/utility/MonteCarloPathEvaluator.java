@@ -0,0 +1,15 @@
+package calculator.utility;
+
+/**
+ * 根据一条路径的随机数计算结果, 例如同一组随机数下多个期权的价格;
+ * 每个线程使用各自的实例, 实例可以保存可重复使用的路径缓存;
+ *
+ * @author liangcy
+ */
+public interface MonteCarloPathEvaluator {
+    /**
+     * @param randomNums 一条路径的标准正态随机数, 长度为nodes
+     * @param values     结果, 长度为统计的维数
+     */
+    void evaluate(double[] randomNums, double[] values);
+}
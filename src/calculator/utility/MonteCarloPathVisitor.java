@@ -0,0 +1,34 @@
+package calculator.utility;
+
+/**
+ * 逐步读取一条路径并计算收益, 收益确定后可以提前结束, 不再生成之后的路径;
+ * 每个线程使用各自的实例, 实例在每条路径之间重复使用;
+ *
+ * @author liangcy
+ */
+public interface MonteCarloPathVisitor {
+    /**
+     * 继续生成下一个价格;
+     */
+    int CONTINUE = 0;
+    /**
+     * 收益已经确定, 不再生成之后的价格;
+     */
+    int STOP = 1;
+    /**
+     * 收益只和到期价格有关, 直接生成到期价格;
+     */
+    int TERMINAL_ONLY = 2;
+
+    /**
+     * @param step  时间点, 0为初始价格, 每条路径都从0开始, 最后为nodes
+     * @param price 这个时间点的价格
+     * @return CONTINUE, STOP 或 TERMINAL_ONLY; 返回TERMINAL_ONLY后只会再读到最后一个时间点
+     */
+    int visit(int step, double price);
+
+    /**
+     * @return 这条路径的期权价格(贴现后), 在返回STOP或读完最后一个时间点后调用
+     */
+    double payoff();
+}
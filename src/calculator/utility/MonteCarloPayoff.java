@@ -0,0 +1,15 @@
+package calculator.utility;
+
+/**
+ * 一次估值之前准备好的收益函数: 执行价、贴现因子、观察时间点下标和插值权重都预先算好, 每条路径不再分配内存;
+ * 每个线程使用各自的实例;
+ *
+ * @author liangcy
+ */
+public interface MonteCarloPayoff {
+    /**
+     * @param pricePath 蒙特卡洛模拟路径, 长度为nodes+1
+     * @return 这条路径的期权价格(贴现后)
+     */
+    double price(double[] pricePath);
+}
@@ -0,0 +1,154 @@
+package calculator.utility;
+
+import java.io.Serializable;
+
+/**
+ * 蒙特卡洛模拟结果的在线统计, Welford算法逐条路径更新均值和协方差, 不保存路径;
+ * 多个线程各自统计后用Chan的公式合并;
+ *
+ * @author liangcy
+ */
+public class MonteCarloStatistics implements Serializable {
+    private long count = 0;
+    private final double[] mean;
+    /**
+     * 离差乘积的和, 除以(count - 1)为协方差矩阵;
+     */
+    private final double[][] coMoment;
+    private final double[] delta;
+    /**
+     * 每条路径第一个结果的统计, 用对偶变量时一个样本包含两条路径; 用来计算方差缩减倍数;
+     */
+    private long pathCount = 0;
+    private double pathMean = 0;
+    private double pathMoment = 0;
+
+    /**
+     * @param dimension 每条路径的结果个数
+     */
+    public MonteCarloStatistics(int dimension) {
+        this.mean = new double[dimension];
+        this.coMoment = new double[dimension][dimension];
+        this.delta = new double[dimension];
+    }
+
+    public int dimension() {
+        return mean.length;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @param values 一条路径的结果, 长度为dimension
+     */
+    public void add(double[] values) {
+        count++;
+        int k = mean.length;
+        for (int i = 0; i < k; i++) {
+            delta[i] = values[i] - mean[i];
+            mean[i] += delta[i] / count;
+        }
+        for (int i = 0; i < k; i++) {
+            double residual = values[i] - mean[i];
+            for (int j = 0; j < k; j++) {
+                coMoment[i][j] += delta[j] * residual;
+            }
+        }
+    }
+
+    /**
+     * @param value 一条路径的第一个结果
+     */
+    public void addPath(double value) {
+        pathCount++;
+        double diff = value - pathMean;
+        pathMean += diff / pathCount;
+        pathMoment += diff * (value - pathMean);
+    }
+
+    /**
+     * 合并另一组统计结果;
+     */
+    public void merge(MonteCarloStatistics other) {
+        if (other.pathCount > 0) {
+            long m = pathCount + other.pathCount;
+            double diff = other.pathMean - pathMean;
+            pathMoment += other.pathMoment + diff * diff * pathCount * other.pathCount / m;
+            pathMean += diff * other.pathCount / m;
+            pathCount = m;
+        }
+        if (other.count == 0) {
+            return;
+        }
+        long n = count + other.count;
+        int k = mean.length;
+        for (int i = 0; i < k; i++) {
+            delta[i] = other.mean[i] - mean[i];
+        }
+        double weight = (double) count * other.count / n;
+        for (int i = 0; i < k; i++) {
+            for (int j = 0; j < k; j++) {
+                coMoment[i][j] += other.coMoment[i][j] + delta[i] * delta[j] * weight;
+            }
+        }
+        for (int i = 0; i < k; i++) {
+            mean[i] += delta[i] * other.count / n;
+        }
+        count = n;
+    }
+
+    /**
+     * 把一次重复模拟的均值作为一个样本加入, 同时合并单条路径的统计;
+     */
+    public void addReplicate(MonteCarloStatistics replicate) {
+        add(replicate.mean);
+        MonteCarloStatistics pathStatistics = new MonteCarloStatistics(0);
+        pathStatistics.pathCount = replicate.pathCount;
+        pathStatistics.pathMean = replicate.pathMean;
+        pathStatistics.pathMoment = replicate.pathMoment;
+        merge(pathStatistics);
+    }
+
+    public double getMean(int i) {
+        return mean[i];
+    }
+
+    public double getVariance(int i) {
+        return getCovariance(i, i);
+    }
+
+    public double getCovariance(int i, int j) {
+        return count > 1 ? coMoment[i][j] / (count - 1) : 0;
+    }
+
+    public long getPathCount() {
+        return pathCount;
+    }
+
+    /**
+     * @return 单条路径第一个结果的方差, 即不做方差缩减时的方差
+     */
+    public double getPathVariance() {
+        return pathCount > 1 ? pathMoment / (pathCount - 1) : 0;
+    }
+
+    /**
+     * @param variance 每个样本的估计量的方差
+     * @return 同样路径条数下, 不做方差缩减的均值方差和实际均值方差的比值
+     */
+    public double varianceReductionFactor(double variance) {
+        if (pathCount == 0 || count == 0 || variance <= 0) {
+            return Double.NaN;
+        }
+        return (getPathVariance() / pathCount) / (variance / count);
+    }
+
+    /**
+     * @return 均值的标准误差
+     */
+    public double getStandardError(int i) {
+        return count > 0 ? Math.sqrt(getVariance(i) / count) : 0;
+    }
+}
@@ -0,0 +1,70 @@
+package calculator.utility;
+
+/**
+ * Ziggurat方法生成标准正态随机数, 128层, 约98.8%的情况只需一个随机整数、一次比较和一次乘法;
+ * 层号和位置取自64位随机数的不同比特, 避免两者相关;
+ *
+ * @author liangcy
+ * @reference Marsaglia, G. and Tsang, W. W. (2000). The ziggurat method for generating random variables.
+ * Journal of Statistical Software 5(8).
+ */
+final class NormalZiggurat {
+    private static final int LAYERS = 128;
+    /**
+     * 尾部起点和每层面积;
+     */
+    private static final double R = 3.442619855899;
+    private static final double V = 9.91256303526217e-3;
+    private static final double M = 2147483648.0;
+    private static final long[] K = new long[LAYERS];
+    private static final double[] W = new double[LAYERS];
+    private static final double[] F = new double[LAYERS];
+
+    static {
+        double dn = R;
+        double tn = dn;
+        double q = V / Math.exp(-0.5 * dn * dn);
+        K[0] = (long) (dn / q * M);
+        K[1] = 0;
+        W[0] = q / M;
+        W[LAYERS - 1] = dn / M;
+        F[0] = 1.0;
+        F[LAYERS - 1] = Math.exp(-0.5 * dn * dn);
+        for (int i = LAYERS - 2; i >= 1; i--) {
+            dn = Math.sqrt(-2 * Math.log(V / dn + Math.exp(-0.5 * dn * dn)));
+            K[i + 1] = (long) (dn / tn * M);
+            tn = dn;
+            F[i] = Math.exp(-0.5 * dn * dn);
+            W[i] = dn / M;
+        }
+    }
+
+    private NormalZiggurat() {
+
+    }
+
+    static double sample(RandomNumberGenerator random) {
+        while (true) {
+            long bits = random.nextLong();
+            int index = (int) (bits & (LAYERS - 1));
+            long hz = (int) (bits >>> 32);
+            double x = hz * W[index];
+            if (Math.abs(hz) < K[index]) {
+                return x;
+            }
+            if (index == 0) {
+                //尾部用指数分布拒绝抽样;
+                double tail;
+                double y;
+                do {
+                    tail = -Math.log(random.nextOpenDouble()) / R;
+                    y = -Math.log(random.nextOpenDouble());
+                } while (y + y < tail * tail);
+                return hz > 0 ? R + tail : -R - tail;
+            }
+            if (F[index] + random.nextDouble() * (F[index - 1] - F[index]) < Math.exp(-0.5 * x * x)) {
+                return x;
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package calculator.utility;
+
+/**
+ * 伪随机数发生器, 每个线程各自持有一个, 不加锁;
+ * 实现类只需给出64位整数, 均匀和标准正态随机数由默认方法生成;
+ *
+ * @author liangcy
+ */
+public interface RandomNumberGenerator {
+    double DOUBLE_UNIT = 1.0 / (1L << 53);
+
+    /**
+     * @return 64位均匀随机整数
+     */
+    long nextLong();
+
+    /**
+     * @return [0, 1)内的均匀随机数
+     */
+    default double nextDouble() {
+        return (nextLong() >>> 11) * DOUBLE_UNIT;
+    }
+
+    /**
+     * @return (0, 1)内的均匀随机数, 可以直接取对数或求逆
+     */
+    default double nextOpenDouble() {
+        return ((nextLong() >>> 11) + 0.5) * DOUBLE_UNIT;
+    }
+
+    /**
+     * @return 标准正态随机数
+     */
+    default double nextGaussian() {
+        return NormalZiggurat.sample(this);
+    }
+
+    /**
+     * @param u 结果向量, 每个值都是[0, 1)内的均匀随机数
+     */
+    default void fill(double[] u) {
+        for (int i = 0; i < u.length; i++) {
+            u[i] = nextDouble();
+        }
+    }
+
+    /**
+     * @param z 结果向量, 每个值都是标准正态随机数
+     */
+    default void fillGaussian(double[] z) {
+        for (int i = 0; i < z.length; i++) {
+            z[i] = NormalZiggurat.sample(this);
+        }
+    }
+}
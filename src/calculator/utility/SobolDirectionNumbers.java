@@ -0,0 +1,37 @@
+package calculator.utility;
+
+/**
+ * Sobol序列第2维开始的方向数, 每行为"多项式次数s 多项式系数a m1 ... ms", 取自Joe & Kuo (2008)的new-joe-kuo-6.21201;
+ * 只收录前20行, 即前21维; 更高的维数由调用方用伪随机数补齐, 需要时可以按同样格式追加数据文件中的后续行;
+ *
+ * @author liangcy
+ * @reference Joe, S. and Kuo, F. Y. (2008). Constructing Sobol sequences with better two-dimensional projections.
+ * SIAM Journal on Scientific Computing 30, 2635-2654.
+ */
+final class SobolDirectionNumbers {
+    private SobolDirectionNumbers() {
+    }
+
+    static final String[] DIRECTION_NUMBERS = {
+            "1 0 1",
+            "2 1 1 3",
+            "3 1 1 3 1",
+            "3 2 1 1 1",
+            "4 1 1 1 3 3",
+            "4 4 1 3 5 13",
+            "5 2 1 1 5 5 17",
+            "5 4 1 1 5 5 5",
+            "5 7 1 1 7 11 19",
+            "5 11 1 1 5 1 1",
+            "5 13 1 1 1 3 11",
+            "5 14 1 3 5 5 31",
+            "6 1 1 3 3 9 7 49",
+            "6 13 1 1 1 15 21 21",
+            "6 16 1 3 1 13 27 49",
+            "6 19 1 1 1 15 7 5",
+            "6 22 1 3 1 15 13 25",
+            "6 25 1 1 5 5 19 61",
+            "7 1 1 3 7 11 23 15 103",
+            "7 4 1 3 7 13 13 15 69"
+    };
+}
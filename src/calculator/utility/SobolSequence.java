@@ -0,0 +1,148 @@
+package calculator.utility;
+
+import java.io.Serializable;
+import java.util.SplittableRandom;
+
+/**
+ * Sobol低差异序列, 用Gray码逐点生成, 可以直接跳到第n个点, 方便分块并行;
+ * 可选Owen扰动(基于哈希的嵌套均匀扰动), 扰动后每个点都在(0, 1)内, 不同种子的结果相互独立, 可以用来估计误差;
+ *
+ * @author liangcy
+ * @reference Bratley, P. and Fox, B. L. (1988). Algorithm 659: Implementing Sobol's quasirandom sequence generator.
+ * Burley, B. (2020). Practical hash-based Owen scrambling. Journal of Computer Graphics Techniques 9(4).
+ */
+public class SobolSequence implements Serializable {
+    public static final int MAX_DIMENSION = SobolDirectionNumbers.DIRECTION_NUMBERS.length + 1;
+    private static final int BITS = 32;
+    private static final double NORMALIZER = 1.0 / (1L << BITS);
+    private static int[][] allDirections;
+
+    private final int dimension;
+    private final int[][] directions;
+    /**
+     * 每一维的扰动种子, 不扰动时为null;
+     */
+    private final int[] scrambleSeeds;
+    private final int[] state;
+    private long index;
+
+    /**
+     * @param dimension 维数, 不超过MAX_DIMENSION
+     */
+    public SobolSequence(int dimension) {
+        this(dimension, null);
+    }
+
+    /**
+     * @param dimension    维数, 不超过MAX_DIMENSION
+     * @param scrambleSeed Owen扰动的种子, 为null时不扰动
+     */
+    public SobolSequence(int dimension, Long scrambleSeed) {
+        if (dimension < 1 || dimension > MAX_DIMENSION) {
+            throw new IllegalArgumentException("dimension should be in [1, " + MAX_DIMENSION + "]");
+        }
+        this.dimension = dimension;
+        this.directions = directions();
+        this.state = new int[dimension];
+        if (scrambleSeed == null) {
+            this.scrambleSeeds = null;
+        } else {
+            SplittableRandom random = new SplittableRandom(scrambleSeed);
+            this.scrambleSeeds = new int[dimension];
+            for (int d = 0; d < dimension; d++) {
+                scrambleSeeds[d] = random.nextInt();
+            }
+        }
+    }
+
+    /**
+     * 第一维为van der Corput序列, 之后每一维由本原多项式和初始方向数递推;
+     */
+    private static synchronized int[][] directions() {
+        if (allDirections != null) {
+            return allDirections;
+        }
+        int[][] v = new int[MAX_DIMENSION][BITS];
+        for (int k = 0; k < BITS; k++) {
+            v[0][k] = 1 << (BITS - 1 - k);
+        }
+        for (int d = 1; d < MAX_DIMENSION; d++) {
+            String[] row = SobolDirectionNumbers.DIRECTION_NUMBERS[d - 1].split(" ");
+            int s = Integer.parseInt(row[0]);
+            int a = Integer.parseInt(row[1]);
+            for (int k = 0; k < s && k < BITS; k++) {
+                v[d][k] = Integer.parseInt(row[k + 2]) << (BITS - 1 - k);
+            }
+            for (int k = s; k < BITS; k++) {
+                v[d][k] = v[d][k - s] ^ (v[d][k - s] >>> s);
+                for (int i = 1; i < s; i++) {
+                    if (((a >>> (s - 1 - i)) & 1) == 1) {
+                        v[d][k] ^= v[d][k - i];
+                    }
+                }
+            }
+        }
+        allDirections = v;
+        return v;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public long getIndex() {
+        return index;
+    }
+
+    /**
+     * 跳到第n个点, 第0个点在不扰动时全为0;
+     */
+    public void skipTo(long n) {
+        if (n < 0 || n >= (1L << BITS)) {
+            throw new IllegalArgumentException("index should be in [0, 2^32)");
+        }
+        long gray = n ^ (n >>> 1);
+        for (int d = 0; d < dimension; d++) {
+            int x = 0;
+            for (int k = 0; k < BITS; k++) {
+                if (((gray >>> k) & 1) == 1) {
+                    x ^= directions[d][k];
+                }
+            }
+            state[d] = x;
+        }
+        index = n;
+    }
+
+    /**
+     * 输出当前点并前进到下一个点;
+     *
+     * @param u 结果, 长度至少为dimension, 每个值取每个区间的中点, 在(0, 1)内
+     */
+    public void nextPoint(double[] u) {
+        for (int d = 0; d < dimension; d++) {
+            int x = scrambleSeeds == null ? state[d] : nestedUniformScramble(state[d], scrambleSeeds[d]);
+            u[d] = ((x & 0xffffffffL) + 0.5) * NORMALIZER;
+        }
+        int c = Long.numberOfTrailingZeros(index + 1);
+        for (int d = 0; d < dimension; d++) {
+            state[d] ^= directions[d][c];
+        }
+        index++;
+    }
+
+    private static int nestedUniformScramble(int x, int seed) {
+        x = Integer.reverse(x);
+        x = laineKarrasPermutation(x, seed);
+        return Integer.reverse(x);
+    }
+
+    private static int laineKarrasPermutation(int x, int seed) {
+        x += seed;
+        x ^= x * 0x6c50b47c;
+        x ^= x * 0xb82f1e52;
+        x ^= x * 0xc7afe638;
+        x ^= x * 0x8d22f6e6;
+        return x;
+    }
+}
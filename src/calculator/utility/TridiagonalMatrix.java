@@ -0,0 +1,226 @@
+package calculator.utility;
+
+import flanagan.math.Matrix;
+
+import java.io.Serializable;
+
+/**
+ * 三对角矩阵, 形如[[b0,c0,0,...,0],[a1,b1,c1,...,0],...,[0,...,0,an,bn]];
+ * a[0]和c[n-1]不在矩阵内, 忽略;
+ * 第一次求解时做一次LU分解(Thomas算法), 之后每次求解只需O(n)次运算, 且不再分配内存;
+ *
+ * @author liangcy
+ */
+public class TridiagonalMatrix implements Serializable {
+    private final double[] a;
+    private final double[] b;
+    private final double[] c;
+    /**
+     * 分解后的上对角系数
+     */
+    private double[] upper;
+    /**
+     * 分解后主对角系数的倒数
+     */
+    private double[] inverseDiagonal;
+    /**
+     * 从下往上分解(UL分解)后的下对角系数
+     */
+    private double[] reverseLower;
+    /**
+     * UL分解后主对角系数的倒数
+     */
+    private double[] reverseInverseDiagonal;
+
+    /**
+     * @param a 下对角系数
+     * @param b 主对角系数
+     * @param c 上对角系数
+     */
+    public TridiagonalMatrix(double[] a, double[] b, double[] c) {
+        this.a = a;
+        this.b = b;
+        this.c = c;
+    }
+
+    private void factorize() {
+        int n = b.length;
+        upper = new double[n];
+        inverseDiagonal = new double[n];
+        inverseDiagonal[0] = 1.0 / b[0];
+        upper[0] = c[0] * inverseDiagonal[0];
+        for (int i = 1; i < n; i++) {
+            inverseDiagonal[i] = 1.0 / (b[i] - a[i] * upper[i - 1]);
+            upper[i] = c[i] * inverseDiagonal[i];
+        }
+    }
+
+    private void reverseFactorize() {
+        int n = b.length;
+        reverseLower = new double[n];
+        reverseInverseDiagonal = new double[n];
+        reverseInverseDiagonal[n - 1] = 1.0 / b[n - 1];
+        reverseLower[n - 1] = a[n - 1] * reverseInverseDiagonal[n - 1];
+        for (int i = n - 2; i >= 0; i--) {
+            reverseInverseDiagonal[i] = 1.0 / (b[i] - c[i] * reverseLower[i + 1]);
+            reverseLower[i] = a[i] * reverseInverseDiagonal[i];
+        }
+    }
+
+    public int size() {
+        return b.length;
+    }
+
+    public double[] getLower() {
+        return a;
+    }
+
+    public double[] getDiagonal() {
+        return b;
+    }
+
+    public double[] getUpper() {
+        return c;
+    }
+
+    /**
+     * 求解 M * x = d;
+     *
+     * @param d 右端向量
+     * @param x 解向量, 可以和d是同一个数组
+     */
+    public void solve(double[] d, double[] x) {
+        if (inverseDiagonal == null) {
+            factorize();
+        }
+        int n = b.length;
+        //向前消元;
+        x[0] = d[0] * inverseDiagonal[0];
+        for (int i = 1; i < n; i++) {
+            x[i] = (d[i] - a[i] * x[i - 1]) * inverseDiagonal[i];
+        }
+        //向后回代;
+        for (int i = n - 2; i >= 0; i--) {
+            x[i] = x[i] - upper[i] * x[i + 1];
+        }
+    }
+
+    /**
+     * Brennan-Schwartz算法求解线性互补问题 M * x >= d, x >= g, (M * x - d) * (x - g) = 0;
+     * 要求行权区域在网格的一端且只有一个边界: 先从远离行权区域的一端消元, 再从行权区域一端回代, 回代时取最大值;
+     *
+     * @param d                     右端向量
+     * @param g                     行权价值向量
+     * @param x                     解向量, 可以和d是同一个数组
+     * @param isExerciseAtLowerEnd  行权区域是否在下标小的一端(如看跌期权)
+     */
+    public void solveWithLowerBound(double[] d, double[] g, double[] x, boolean isExerciseAtLowerEnd) {
+        int n = b.length;
+        if (isExerciseAtLowerEnd) {
+            if (reverseInverseDiagonal == null) {
+                reverseFactorize();
+            }
+            //从下往上消元;
+            x[n - 1] = d[n - 1] * reverseInverseDiagonal[n - 1];
+            for (int i = n - 2; i >= 0; i--) {
+                x[i] = (d[i] - c[i] * x[i + 1]) * reverseInverseDiagonal[i];
+            }
+            //从上往下回代并取最大值;
+            x[0] = Math.max(x[0], g[0]);
+            for (int i = 1; i < n; i++) {
+                x[i] = Math.max(x[i] - reverseLower[i] * x[i - 1], g[i]);
+            }
+        } else {
+            if (inverseDiagonal == null) {
+                factorize();
+            }
+            x[0] = d[0] * inverseDiagonal[0];
+            for (int i = 1; i < n; i++) {
+                x[i] = (d[i] - a[i] * x[i - 1]) * inverseDiagonal[i];
+            }
+            x[n - 1] = Math.max(x[n - 1], g[n - 1]);
+            for (int i = n - 2; i >= 0; i--) {
+                x[i] = Math.max(x[i] - upper[i] * x[i + 1], g[i]);
+            }
+        }
+    }
+
+    /**
+     * 投影超松弛迭代(PSOR)求解线性互补问题 M * x >= d, x >= g, (M * x - d) * (x - g) = 0;
+     * 不要求行权区域的形状, 初始值为max(d, g);
+     *
+     * @param d             右端向量
+     * @param g             行权价值向量
+     * @param x             解向量, 不能和d是同一个数组
+     * @param omega         松弛因子, 取值(0, 2)
+     * @param tolerance     两次迭代之间的最大变化小于tolerance时停止
+     * @param maxIterations 最大迭代次数
+     * @return 迭代次数, 达到maxIterations仍没有收敛时为-1
+     */
+    public int solveWithLowerBoundBySor(double[] d, double[] g, double[] x, double omega,
+                                        double tolerance, int maxIterations) {
+        int n = b.length;
+        for (int i = 0; i < n; i++) {
+            x[i] = Math.max(d[i], g[i]);
+        }
+        for (int k = 1; k <= maxIterations; k++) {
+            double error = 0;
+            for (int i = 0; i < n; i++) {
+                double residual = d[i] - b[i] * x[i];
+                if (i > 0) {
+                    residual -= a[i] * x[i - 1];
+                }
+                if (i < n - 1) {
+                    residual -= c[i] * x[i + 1];
+                }
+                double value = Math.max(x[i] + omega * residual / b[i], g[i]);
+                error = Math.max(error, Math.abs(value - x[i]));
+                x[i] = value;
+            }
+            if (error < tolerance) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 计算 y = M * x;
+     *
+     * @param x 向量
+     * @param y 结果向量, 不能和x是同一个数组
+     */
+    public void multiply(double[] x, double[] y) {
+        int n = b.length;
+        if (n == 1) {
+            y[0] = b[0] * x[0];
+            return;
+        }
+        y[0] = b[0] * x[0] + c[0] * x[1];
+        for (int i = 1; i < n - 1; i++) {
+            y[i] = a[i] * x[i - 1] + b[i] * x[i] + c[i] * x[i + 1];
+        }
+        y[n - 1] = a[n - 1] * x[n - 2] + b[n - 1] * x[n - 1];
+    }
+
+    /**
+     * @return 稠密矩阵, 只用于对照;
+     */
+    public Matrix toMatrix() {
+        int n = b.length;
+        double[][] matrix = new double[n][n];
+        //主对角系数b
+        for (int j = 0; j < n; j++) {
+            matrix[j][j] = b[j];
+        }
+        //上对角系数c
+        for (int j = 0; j < n - 1; j++) {
+            matrix[j][j + 1] = c[j];
+        }
+        //下对角系数a
+        for (int j = 1; j < n; j++) {
+            matrix[j][j - 1] = a[j];
+        }
+        return new Matrix(matrix);
+    }
+}
@@ -0,0 +1,81 @@
+package calculator.utility;
+
+import java.io.Serializable;
+
+/**
+ * xoshiro256**伪随机数发生器, 周期2^256-1, 每个数只需几次移位和乘法;
+ * 种子用SplitMix64展开成256位状态, 相近的种子也得到互不相关的序列;
+ *
+ * @author liangcy
+ * @reference Blackman, D. and Vigna, S. (2021). Scrambled linear pseudorandom number generators.
+ * ACM Transactions on Mathematical Software 47(4).
+ */
+public class Xoshiro256StarStar implements RandomNumberGenerator, Serializable {
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private static final long[] JUMP = {0x180ec6d33cfd0abaL, 0xd5a61266f0c9392cL,
+            0xa9582618e03fc9aaL, 0x39abdc4529b1661cL};
+
+    private long s0;
+    private long s1;
+    private long s2;
+    private long s3;
+
+    public Xoshiro256StarStar(long seed) {
+        setSeed(seed);
+    }
+
+    /**
+     * 重新设置种子, 之后的序列只由种子决定;
+     */
+    public void setSeed(long seed) {
+        long x = seed;
+        s0 = splitMix64(x += GOLDEN_GAMMA);
+        s1 = splitMix64(x += GOLDEN_GAMMA);
+        s2 = splitMix64(x += GOLDEN_GAMMA);
+        s3 = splitMix64(x + GOLDEN_GAMMA);
+    }
+
+    private static long splitMix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    public long nextLong() {
+        long result = Long.rotateLeft(s1 * 5, 7) * 9;
+        long t = s1 << 17;
+        s2 ^= s0;
+        s3 ^= s1;
+        s1 ^= s2;
+        s0 ^= s3;
+        s2 ^= t;
+        s3 = Long.rotateLeft(s3, 45);
+        return result;
+    }
+
+    /**
+     * 前进2^128步, 用来生成互不重叠的子序列;
+     */
+    public void jump() {
+        long t0 = 0;
+        long t1 = 0;
+        long t2 = 0;
+        long t3 = 0;
+        for (long jump : JUMP) {
+            for (int b = 0; b < 64; b++) {
+                if ((jump & (1L << b)) != 0) {
+                    t0 ^= s0;
+                    t1 ^= s1;
+                    t2 ^= s2;
+                    t3 ^= s3;
+                }
+                nextLong();
+            }
+        }
+        s0 = t0;
+        s1 = t1;
+        s2 = t2;
+        s3 = t3;
+    }
+}
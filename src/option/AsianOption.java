@@ -1,9 +1,8 @@
 package option;
 
 import calculator.utility.CalculateUtil;
-import calculator.utility.MonteCarlo;
+import calculator.utility.MonteCarloPayoff;
 import flanagan.analysis.Stat;
-import flanagan.interpolation.LinearInterpolation;
 import flanagan.math.Maximisation;
 import flanagan.math.MaximisationFunction;
 import underlying.Future;
@@ -249,38 +248,125 @@ public class AsianOption extends BaseSingleOption implements Serializable {
         }
     }
 
+    @Override
+    public boolean hasMonteCarloMethod() {
+        return true;
+    }
+
+    @Override
+    public double monteCarloPrice(double[] pricePath) {
+        return monteCarloPayoff(pricePath.length - 1).price(pricePath);
+    }
+
     /**
      * 蒙特卡洛模拟路径的时间点可能和实际观察时间点不匹配, 利用线性插值取得观察时间点的价格;
-     *
-     * @param pricePath 蒙特卡洛模拟路径
-     * @return 计算蒙特卡洛模拟underlying price均值
+     * 每个观察时间点左右两个模拟时间点的下标和权重预先算好, 权重已经包含求均值的系数;
      */
-    private double calculateAvgPriceWithMonteCarloPath(double[] pricePath) {
+    @Override
+    public MonteCarloPayoff monteCarloPayoff(int nodes) {
         double t = getVanillaOptionParams().getTimeRemaining();
-        double[] monteCarloTimePoints = MonteCarlo.getTimePoints(t, pricePath);
-        LinearInterpolation interpolation = new LinearInterpolation(monteCarloTimePoints, pricePath);
-        double[] futurePrice = new double[observeTimePoints.length];
-        for (int i = 0; i < observeTimePoints.length; i++) {
-            futurePrice[i] = interpolation.interpolate(observeTimePoints[i]);
+        int m = observeTimePoints.length;
+        int[] lowerIndexes = new int[m];
+        double[] lowerWeights = new double[m];
+        double[] upperWeights = new double[m];
+        double futureWeight = t / (pastTime + t) / m;
+        for (int i = 0; i < m; i++) {
+            double position = Math.min(Math.max(observeTimePoints[i] / t * nodes, 0), nodes);
+            int lower = Math.min((int) position, nodes - 1);
+            double weight = position - lower;
+            lowerIndexes[i] = lower;
+            lowerWeights[i] = (1 - weight) * futureWeight;
+            upperWeights[i] = weight * futureWeight;
         }
-        return (pastAvgPrice * pastTime + Stat.mean(futurePrice) * t) / (pastTime + t);
+        double pastAvg = pastAvgPrice * pastTime / (pastTime + t);
+        //这里的strike不用转换
+        double k = getVanillaOptionParams().getStrikePrice();
+        int index = getVanillaOptionParams().indexOfOptionType();
+        double discount = getDiscountValueByRiskFreeRate();
+        return pricePath -> {
+            double sAvg = pastAvg;
+            for (int i = 0; i < m; i++) {
+                int lower = lowerIndexes[i];
+                sAvg += lowerWeights[i] * pricePath[lower] + upperWeights[i] * pricePath[lower + 1];
+            }
+            return Math.max(index * (sAvg - k), 0.0) * discount;
+        };
     }
 
+    /**
+     * 离最近的模拟时间点上的几何平均亚式期权, 有解析解;
+     */
     @Override
-    public boolean hasMonteCarloMethod() {
-        return true;
+    public double monteCarloControlVariate(double[] pricePath) {
+        return monteCarloControlVariatePayoff(pricePath.length - 1).price(pricePath);
     }
 
     @Override
-    public double monteCarloPrice(double[] pricePath) {
-        double sAvg = calculateAvgPriceWithMonteCarloPath(pricePath);
-        //这里的strike不用转换
-        double k = getVanillaOptionParams().getStrikePrice();
-        if (getVanillaOptionParams().isOptionTypeCall()) {
-            return Math.max(sAvg - k, 0.0) * getDiscountValueByRiskFreeRate();
+    public MonteCarloPayoff monteCarloControlVariatePayoff(int nodes) {
+        int[] nodeIndexes = nearestMonteCarloNodes(nodes);
+        double k = transformStrike();
+        int index = getVanillaOptionParams().indexOfOptionType();
+        double mult = multi() * getDiscountValueByRiskFreeRate();
+        return pricePath -> {
+            double sumOfLog = 0.0;
+            for (int nodeIndex : nodeIndexes) {
+                sumOfLog += Math.log(pricePath[nodeIndex]);
+            }
+            double geometricAvg = Math.exp(sumOfLog / nodeIndexes.length);
+            return mult * Math.max(index * (geometricAvg - k), 0.0);
+        };
+    }
+
+    /**
+     * ln(G) ~ N(mu, volG^2), mu = ln(s) + (b - vol^2 / 2) * mean(t), volG^2 = vol^2 * sum(min(t_i, t_j)) / m^2;
+     */
+    @Override
+    public double monteCarloControlVariateMean(int nodes) {
+        double s = getUnderlying().getSpotPrice();
+        double b = getUnderlying().getCostOfCarry();
+        double vol = getVanillaOptionParams().getVolatility();
+        double t = getVanillaOptionParams().getTimeRemaining();
+        int[] nodeIndexes = nearestMonteCarloNodes(nodes);
+        int m = nodeIndexes.length;
+        double sumOfTime = 0.0;
+        double sumOfMinTime = 0.0;
+        for (int i = 0; i < m; i++) {
+            double ti = t * nodeIndexes[i] / nodes;
+            sumOfTime += ti;
+            for (int j = 0; j < m; j++) {
+                sumOfMinTime += Math.min(ti, t * nodeIndexes[j] / nodes);
+            }
+        }
+        double mu = Math.log(s) + (b - vol * vol / 2) * sumOfTime / m;
+        double volG = vol * Math.sqrt(sumOfMinTime) / m;
+        double forward = Math.exp(mu + volG * volG / 2);
+        double k = transformStrike();
+        int index = getVanillaOptionParams().indexOfOptionType();
+        double undiscounted;
+        if (k <= 0) {
+            undiscounted = getVanillaOptionParams().isOptionTypeCall() ? forward - k : 0.0;
+        } else if (volG == 0) {
+            undiscounted = Math.max(index * (forward - k), 0.0);
         } else {
-            return Math.max(k - sAvg, 0.0) * getDiscountValueByRiskFreeRate();
+            double d1 = (Math.log(forward / k) + volG * volG / 2) / volG;
+            double d2 = d1 - volG;
+            undiscounted = index * (forward * CalculateUtil.normalCDF(index * d1) -
+                    k * CalculateUtil.normalCDF(index * d2));
+        }
+        return multi() * undiscounted * getDiscountValueByRiskFreeRate();
+    }
+
+    /**
+     * @return 每个观察时间点最近的模拟时间点下标
+     */
+    private int[] nearestMonteCarloNodes(int nodes) {
+        double t = getVanillaOptionParams().getTimeRemaining();
+        int[] nodeIndexes = new int[observeTimePoints.length];
+        for (int i = 0; i < observeTimePoints.length; i++) {
+            int index = (int) Math.round(observeTimePoints[i] / t * nodes);
+            nodeIndexes[i] = Math.min(Math.max(index, 0), nodes);
         }
+        return nodeIndexes;
     }
 
     @Override
@@ -1,140 +1,107 @@
 package option;
 
+import calculator.utility.BarrierMonitor;
 import calculator.utility.CalculateUtil;
-import calculator.utility.MonteCarlo;
+import calculator.utility.MonteCarloPathVisitor;
 
 import java.io.Serializable;
 
+/**
+ * 单障碍期权Reiner-Rubinstein公式的一次性计算上下文;
+ * 构造时把d1~d4, e1~e4, c1, c2和障碍价的波动率各计算一次, a, b, c, d四个部分和普通欧式价格都从这里取;
+ */
 class BarrierCalculator {
-    private BarrierOption option;
-
-    void setOption(BarrierOption option) {
-        this.option = option;
-    }
-
-    private double sigmaT(double vol) {
-        return vol * Math.sqrt(option.getVanillaOptionParams().getTimeRemaining());
-    }
-
-    private double c1() {
-        double h = option.getBarrierOptionParams().getBarrierPrice();
-        double s = option.getUnderlying().getSpotPrice();
-        double a = 2 * option.getCostOfCarry() / (option.volAtBarrier() * option.volAtBarrier()) - 1;
-        return Math.pow(h / s, a);
-    }
-
-    private double c2() {
-        double h = option.getBarrierOptionParams().getBarrierPrice();
-        double s = option.getUnderlying().getSpotPrice();
-        double a = 2 * option.getVanillaOptionParams().getVolatility() / option.volAtBarrier();
-        return c1() * Math.pow(h / s, a);
-    }
-
-    private double d1() {
-        EuropeanOption europeanOption = new EuropeanOption(option);
-        return europeanOption.d1();
-    }
-
-    private double d2() {
-        EuropeanOption europeanOption = new EuropeanOption(option);
-        return europeanOption.d2();
-    }
-
-    private double d3() {
-        double h = option.getBarrierOptionParams().getBarrierPrice();
+    private final int phi;
+    private final double newSpotPrice;
+    private final double newStrike;
+    private final double c1;
+    private final double c2;
+    private final double d1;
+    private final double d2;
+    private final double d3;
+    private final double d4;
+    private final double e1;
+    private final double e2;
+    private final double e3;
+    private final double e4;
+    private final boolean useLongExpression;
+
+    BarrierCalculator(BarrierOption option) {
         double s = option.getUnderlying().getSpotPrice();
-        return d1() + 2 * Math.log(h / s) / (sigmaT(option.volAtBarrier()));
-    }
-
-    private double d4() {
+        double k = option.getVanillaOptionParams().getStrikePrice();
         double h = option.getBarrierOptionParams().getBarrierPrice();
-        double s = option.getUnderlying().getSpotPrice();
-        return d2() + 2 * Math.log(h / s) / (sigmaT(option.volAtBarrier()));
-    }
-
-    private double e1() {
-        double vol = option.getVanillaOptionParams().getVolatility();
-        return e2() - sigmaT(vol);
-    }
-
-    private double e2() {
-        EuropeanOption europeanOption = new EuropeanOption(option);
-        europeanOption.getVanillaOptionParams().setStrikePrice(option.getBarrierOptionParams().getBarrierPrice());
-        europeanOption.getVanillaOptionParams().setVolatility(option.volAtBarrier());
-        return -europeanOption.d2();
-    }
-
-    private double e3() {
+        double t = option.getVanillaOptionParams().getTimeRemaining();
         double vol = option.getVanillaOptionParams().getVolatility();
-        return e4() - sigmaT(vol);
-    }
-
-    private double e4() {
-        EuropeanOption europeanOption = new EuropeanOption(option);
-        europeanOption.getVanillaOptionParams().setStrikePrice(option.getBarrierOptionParams().getBarrierPrice());
-        europeanOption.getVanillaOptionParams().setVolatility(option.volAtBarrier());
-        europeanOption.swapSpotStrike();
-        return -europeanOption.d2();
-    }
-
-    /**
-     * @return (d1 + e1 < 0 & & call) || (d1 + e1 > 0 && put)
-     */
-    private boolean useShortExpression() {
-        return (d1() + e1() < 0) == (option.getVanillaOptionParams().isOptionTypeCall());
+        double volAtBarrier = option.volAtBarrier();
+        double sqrtT = Math.sqrt(t);
+        double sigmaT = vol * sqrtT;
+        double barrierSigmaT = volAtBarrier * sqrtT;
+        //远期价格/现价, 障碍价和现价交换后用同一个系数
+        double growth = option.getUnderlying().getFutureValue(t) / s;
+        double logHS = Math.log(h / s);
+
+        phi = option.getVanillaOptionParams().indexOfOptionType();
+        newSpotPrice = phi * option.getDiscountValueByDividendRate() * s;
+        newStrike = phi * option.getDiscountValueByRiskFreeRate() * k;
+        c1 = Math.pow(h / s, 2 * option.getCostOfCarry() / (volAtBarrier * volAtBarrier) - 1);
+        c2 = c1 * Math.pow(h / s, 2 * vol / volAtBarrier);
+        d1 = (Math.log(s * growth / k) + sigmaT * sigmaT / 2) / sigmaT;
+        d2 = d1 - sigmaT;
+        d3 = d1 + 2 * logHS / barrierSigmaT;
+        d4 = d2 + 2 * logHS / barrierSigmaT;
+        //执行价为h, 波动率为障碍价波动率的欧式期权的-d2; e4再交换现价和执行价
+        e2 = -((Math.log(s * growth / h) + barrierSigmaT * barrierSigmaT / 2) / barrierSigmaT - barrierSigmaT);
+        e1 = e2 - sigmaT;
+        e4 = -((Math.log(h * growth / s) + barrierSigmaT * barrierSigmaT / 2) / barrierSigmaT - barrierSigmaT);
+        e3 = e4 - sigmaT;
+        //d1 + e1 = ln(h/k)/sigmaT, (k < h && call) || (k > h && put)时还要加上另一项
+        useLongExpression = (d1 + e1 < 0) != option.getVanillaOptionParams().isOptionTypeCall();
     }
 
     public int index() {
-        if (useShortExpression()) {
+        if (useLongExpression) {
             return 1;
         } else {
             return 0;
         }
     }
 
-    private double getNewSpotPrice() {
-        return option.getVanillaOptionParams().indexOfOptionType() *
-                option.getDiscountValueByDividendRate() *
-                option.getUnderlying().getSpotPrice();
-    }
-
-    private double getNewStrike() {
-        return option.getVanillaOptionParams().indexOfOptionType() *
-                option.getDiscountValueByRiskFreeRate() *
-                option.getVanillaOptionParams().getStrikePrice();
-    }
-
     private double getNormalCDFMin(double d, double e) {
-        int phi = option.getVanillaOptionParams().indexOfOptionType();
         return CalculateUtil.normalCDF(Math.min(phi * d, phi * e));
     }
 
     private double getNormalCDFMinus(double d, double e) {
-        int phi = option.getVanillaOptionParams().indexOfOptionType();
         return CalculateUtil.normalCDF(phi * d) - CalculateUtil.normalCDF(phi * e);
     }
 
+    /**
+     * @return 同样执行价的普通欧式期权的bsm价格
+     */
+    public double vanilla() {
+        return newSpotPrice * CalculateUtil.normalCDF(phi * d1) - newStrike * CalculateUtil.normalCDF(phi * d2);
+    }
+
     public double a() {
-        double part1 = getNewSpotPrice() * getNormalCDFMin(d1(), -e1());
-        double part2 = getNewStrike() * getNormalCDFMin(d2(), -e2());
+        double part1 = newSpotPrice * getNormalCDFMin(d1, -e1);
+        double part2 = newStrike * getNormalCDFMin(d2, -e2);
         return part1 - part2;
     }
 
     public double b() {
-        double part1 = getNewSpotPrice() * getNormalCDFMinus(d1(), -e1());
-        double part2 = getNewStrike() * getNormalCDFMinus(d2(), -e2());
+        double part1 = newSpotPrice * getNormalCDFMinus(d1, -e1);
+        double part2 = newStrike * getNormalCDFMinus(d2, -e2);
         return part1 - part2;
     }
 
     public double c() {
-        double part1 = getNewSpotPrice() * c2() * getNormalCDFMin(d3(), -e3());
-        double part2 = getNewStrike() * c1() * getNormalCDFMin(d4(), -e4());
+        double part1 = newSpotPrice * c2 * getNormalCDFMin(d3, -e3);
+        double part2 = newStrike * c1 * getNormalCDFMin(d4, -e4);
         return part1 - part2;
     }
 
     public double d() {
-        double part1 = getNewSpotPrice() * c2() * getNormalCDFMinus(d3(), -e3());
-        double part2 = getNewStrike() * c1() * getNormalCDFMinus(d4(), -e4());
+        double part1 = newSpotPrice * c2 * getNormalCDFMinus(d3, -e3);
+        double part2 = newStrike * c1 * getNormalCDFMinus(d4, -e4);
         return part1 - part2;
     }
 }
@@ -177,27 +144,95 @@ public class BarrierOption extends BaseSingleOption implements Serializable {
 
     @Override
     public double monteCarloPrice(double[] pricePath) {
-        EuropeanOption option = new EuropeanOption(this);
         if (getBarrierOptionParams().isIn()) {
             for (double price : pricePath) {
                 if (getBarrierOptionParams().isTouchSingleBarrier(price)) {
-                    return option.monteCarloPrice(pricePath);
+                    return europeanPayoff(pricePath[pricePath.length - 1]);
                 }
             }
             return rebate * getDiscountValueByRiskFreeRate();
         } else {
-            double[] timePoints = MonteCarlo.getTimePoints(getVanillaOptionParams().getTimeRemaining(), pricePath);
+            int nodes = pricePath.length - 1;
             for (int i = 0; i < pricePath.length; i++) {
                 if (getBarrierOptionParams().isTouchSingleBarrier(pricePath[i])) {
                     double r = getUnderlying().getRiskFreeRate();
-                    double hitTime = timePoints[i];
+                    double hitTime = getVanillaOptionParams().getTimeRemaining() * i / nodes;
                     return rebate * Math.exp(-r * hitTime);
                 }
             }
-            return option.monteCarloPrice(pricePath);
+            return europeanPayoff(pricePath[pricePath.length - 1]);
         }
     }
 
+    @Override
+    public boolean hasMonteCarloPathVisitor() {
+        return true;
+    }
+
+    /**
+     * survival为到当前时间点为止没有触碰障碍的概率, 不修正时只能是0或1;
+     * 敲出期权的回扣按每一步触碰的概率在这一步末支付; 敲入后只需要到期价格, 敲出后收益就是回扣;
+     */
+    @Override
+    public MonteCarloPathVisitor monteCarloPathVisitor(int nodes, String barrierCorrection) {
+        boolean isIn = getBarrierOptionParams().isIn();
+        double discount = getDiscountValueByRiskFreeRate();
+        double r = getUnderlying().getRiskFreeRate();
+        double vol = getVanillaOptionParams().getVolatility();
+        double deltaT = getVanillaOptionParams().getTimeRemaining() / nodes;
+        double[] barriers = new double[nodes + 1];
+        double[] rebates = new double[nodes + 1];
+        for (int i = 0; i <= nodes; i++) {
+            barriers[i] = getBarrierOptionParams().getBarrierPrice();
+            rebates[i] = rebate * Math.exp(-r * deltaT * i);
+        }
+        boolean isUp = getBarrierOptionParams().isUp();
+        BarrierMonitor monitor = new BarrierMonitor(isUp ? barriers : null, isUp ? null : barriers,
+                barrierCorrection, vol, deltaT);
+        return new MonteCarloPathVisitor() {
+            private double survival;
+            private double payoff;
+
+            @Override
+            public int visit(int step, double price) {
+                if (step == 0) {
+                    survival = 1;
+                    payoff = 0;
+                }
+                double probability = survival > 0 ? monitor.crossingProbability(step, price) : 0;
+                if (probability > 0) {
+                    if (!isIn) {
+                        payoff += survival * probability * rebates[step];
+                    }
+                    survival *= 1 - probability;
+                }
+                if (survival == 0) {
+                    if (!isIn) {
+                        return STOP;
+                    }
+                    if (step < nodes) {
+                        return TERMINAL_ONLY;
+                    }
+                }
+                if (step == nodes) {
+                    double europeanPayoff = europeanPayoff(price, discount);
+                    if (isIn) {
+                        payoff = (1 - survival) * europeanPayoff + survival * rebate * discount;
+                    } else {
+                        payoff += survival * europeanPayoff;
+                    }
+                    return STOP;
+                }
+                return CONTINUE;
+            }
+
+            @Override
+            public double payoff() {
+                return payoff;
+            }
+        };
+    }
+
     /**
      * @return 障碍价的波动率
      */
@@ -229,12 +264,16 @@ public class BarrierOption extends BaseSingleOption implements Serializable {
         return realRebate;
     }
 
+    /**
+     * 每次定价只构造一个BarrierCalculator, 敲入部分和普通欧式价格都从中计算;
+     */
     @Override
     public double bsm() {
+        BarrierCalculator calculator = new BarrierCalculator(this);
         if (barrierOptionParams.isIn()) {
-            return bsmIn() + getRealRebate();
+            return bsmIn(calculator) + getRealRebate();
         } else {
-            return europeanVanillaPrice() - bsmIn() + getRealRebate();
+            return calculator.vanilla() - bsmIn(calculator) + getRealRebate();
         }
     }
 
@@ -243,13 +282,11 @@ public class BarrierOption extends BaseSingleOption implements Serializable {
      *
      * @return 敲入期权的bsm价格
      */
-    private double bsmIn() {
+    private double bsmIn(BarrierCalculator calculator) {
         //敲入期权如果已敲入, 按普通欧式期权计算;
         if (getBarrierOptionParams().isTouchSingleBarrier(getUnderlying().getSpotPrice())) {
-            return europeanVanillaPrice();
+            return calculator.vanilla();
         }
-        BarrierCalculator calculator = new BarrierCalculator();
-        calculator.setOption(this);
         //(up&&call) || (down&&put)
         if (barrierOptionParams.isUp() == getVanillaOptionParams().isOptionTypeCall()) {
             return calculator.a() + calculator.d() * calculator.index();
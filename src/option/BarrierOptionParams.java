@@ -134,6 +134,21 @@ public class BarrierOptionParams implements Serializable {
         }
     }
 
+    public BarrierOptionParams copy() {
+        BarrierOptionParams params = new BarrierOptionParams();
+        params.barrierPrice = barrierPrice;
+        params.barrierType = barrierType;
+        params.barrierDirection = barrierDirection;
+        params.payoffType = payoffType;
+        params.upperBarrierPrice = upperBarrierPrice;
+        params.lowerBarrierPrice = lowerBarrierPrice;
+        params.upperCurve = upperCurve;
+        params.lowerCurve = lowerCurve;
+        params.maxIterationTimes = maxIterationTimes;
+        params.tolerance = tolerance;
+        return params;
+    }
+
     @Override
     public String toString() {
         return "barrier price: " + barrierPrice + ConstantString.SEPARATOR +
@@ -1,6 +1,9 @@
 package option;
 
 import calculator.utility.ConstantString;
+import calculator.utility.Greeks;
+import calculator.utility.MonteCarloPayoff;
+import calculator.utility.MonteCarloPathVisitor;
 import underlying.BaseUnderlying;
 import volatility.VolatilitySurface;
 
@@ -9,7 +12,7 @@ import java.io.Serializable;
 /**
  * @author liangcy
  */
-public abstract class BaseSingleOption extends BaseOption implements Serializable {
+public abstract class BaseSingleOption extends BaseOption implements Serializable, Cloneable {
 
     private VanillaOptionParams vanillaOptionParams = new VanillaOptionParams();
     private GreekPrecisionParams precision = new GreekPrecisionParams();
@@ -52,6 +55,24 @@ public abstract class BaseSingleOption extends BaseOption implements Serializabl
         this.volatilitySurface = volatilitySurface;
     }
 
+    /**
+     * 计算Greeks时扰动参数用的副本: 只复制标的和期权参数, 波动率曲面、精度和各期权自己的参数和原期权共用;
+     * 比序列化深拷贝快得多; 修改副本的标的和期权参数不影响原期权, 其他参数在定价时只读;
+     *
+     * @return 副本
+     */
+    public BaseSingleOption scenarioCopy() {
+        BaseSingleOption option;
+        try {
+            option = (BaseSingleOption) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+        option.underlying = underlying == null ? null : underlying.copy();
+        option.vanillaOptionParams = vanillaOptionParams.copy();
+        return option;
+    }
+
     public double getDiscountValueByRiskFreeRate() {
         double r = underlying.getRiskFreeRate();
         double t = vanillaOptionParams.getTimeRemaining();
@@ -117,6 +138,35 @@ public abstract class BaseSingleOption extends BaseOption implements Serializabl
         }
     }
 
+    /**
+     * 有解析解的Greeks时, 解析解计算器直接使用, 不再扰动参数重新定价;
+     */
+    public boolean hasAnalyticGreeks() {
+        return false;
+    }
+
+    /**
+     * @return 价格和全部Greeks, 单位和计算器一致
+     */
+    public Greeks analyticGreeks() {
+        return null;
+    }
+
+    /**
+     * 有直接求解隐含波动率的方法时, 解析解计算器不再用牛顿二分法反复定价;
+     */
+    public boolean hasAnalyticImpliedVolatility() {
+        return false;
+    }
+
+    /**
+     * @param price 期权价格
+     * @return 隐含波动率, 价格超出无套利区间时为NaN
+     */
+    public double analyticImpliedVolatility(double price) {
+        return Double.NaN;
+    }
+
     public boolean isEarlyExercise() {
         return false;
     }
@@ -129,6 +179,104 @@ public abstract class BaseSingleOption extends BaseOption implements Serializabl
         return 0;
     }
 
+    /**
+     * 在模拟之前调用一次, 之后每条路径用返回的收益函数计算, 结果和monteCarloPrice相同;
+     *
+     * @param nodes 时间步数
+     */
+    public MonteCarloPayoff monteCarloPayoff(int nodes) {
+        return this::monteCarloPrice;
+    }
+
+    /**
+     * 障碍类期权触碰障碍后收益往往就确定了, 逐步读取路径可以提前结束;
+     */
+    public boolean hasMonteCarloPathVisitor() {
+        return false;
+    }
+
+    /**
+     * @param nodes             时间步数
+     * @param barrierCorrection 障碍的连续监测修正, MonteCarlo.BARRIER_CORRECTION_*; 不修正时和monteCarloPrice的结果相同
+     * @return 逐步计算收益的visitor, 每次调用生成新的实例
+     */
+    public MonteCarloPathVisitor monteCarloPathVisitor(int nodes, String barrierCorrection) {
+        return null;
+    }
+
+    /**
+     * 收益只和到期价格有关时, 路径只需要生成到期价格, 中间的价格没有意义;
+     */
+    public boolean isMonteCarloTerminalPayoff() {
+        return false;
+    }
+
+    /**
+     * 收益对路径连续(几乎处处可导)的期权可以用路径导数法计算Greeks, 数字期权和障碍期权不行;
+     */
+    public boolean hasMonteCarloPathwiseMethod() {
+        return false;
+    }
+
+    /**
+     * @param pricePath      蒙特卡洛模拟路径
+     * @param pathDerivative 期权价格(贴现后)对路径上每个价格的导数, 长度和pricePath相同, 传入时为0
+     * @return 期权价格, 和monteCarloPrice相同
+     */
+    public double monteCarloPathwiseDerivative(double[] pricePath, double[] pathDerivative) {
+        return monteCarloPrice(pricePath);
+    }
+
+    /**
+     * @param nodes 时间步数
+     * @return 准备好的控制变量收益函数, 结果和monteCarloControlVariate相同
+     */
+    public MonteCarloPayoff monteCarloControlVariatePayoff(int nodes) {
+        return this::monteCarloControlVariate;
+    }
+
+    /**
+     * 控制变量: 和期权价格相关, 并且有解析解的收益; 默认为同样执行价和到期日的普通欧式期权;
+     */
+    public boolean hasMonteCarloControlVariate() {
+        return hasMonteCarloMethod();
+    }
+
+    /**
+     * @param pricePath 蒙特卡洛模拟路径
+     * @return 控制变量在这条路径上的价格(贴现后)
+     */
+    public double monteCarloControlVariate(double[] pricePath) {
+        return europeanPayoff(pricePath[pricePath.length - 1]);
+    }
+
+    /**
+     * @param terminalPrice 到期价格
+     * @return 同样执行价的普通欧式期权的收益(贴现后)
+     */
+    protected double europeanPayoff(double terminalPrice) {
+        return europeanPayoff(terminalPrice, getDiscountValueByRiskFreeRate());
+    }
+
+    /**
+     * @param terminalPrice 到期价格
+     * @param discount      贴现因子, 逐条路径计算时预先算好
+     * @return 同样执行价的普通欧式期权的收益(贴现后)
+     */
+    protected double europeanPayoff(double terminalPrice, double discount) {
+        double k = getVanillaOptionParams().getStrikePrice();
+        int index = getVanillaOptionParams().indexOfOptionType();
+        return discount * Math.max(index * (terminalPrice - k), 0);
+    }
+
+    /**
+     * @param nodes 蒙特卡洛模拟的时间步数
+     * @return 控制变量价格的期望
+     */
+    public double monteCarloControlVariateMean(int nodes) {
+        return new EuropeanOption(this).bsm();
+    }
+
     public boolean hasFiniteDifferenceMethod() {
         return false;
     }
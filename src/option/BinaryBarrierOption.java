@@ -1,10 +1,9 @@
 package option;
 
+import calculator.utility.BarrierMonitor;
 import calculator.utility.CalculateUtil;
 import calculator.utility.MonteCarlo;
-import flanagan.math.DeepCopy;
-import underlying.BaseUnderlying;
-import volatility.VolatilitySurface;
+import calculator.utility.MonteCarloPathVisitor;
 
 import java.io.Serializable;
 
@@ -125,11 +124,15 @@ public class BinaryBarrierOption extends BaseSingleOption implements Serializabl
      * @param option 障碍期权
      */
     BinaryBarrierOption(BarrierOption option) {
-        this.setUnderlying((BaseUnderlying) DeepCopy.copy(option.getUnderlying()));
-        this.setVanillaOptionParams((VanillaOptionParams) DeepCopy.copy(option.getVanillaOptionParams()));
-        this.setVolatilitySurface((VolatilitySurface) DeepCopy.copy(option.getVolatilitySurface()));
-        this.setBarrierOptionParams((BarrierOptionParams) DeepCopy.copy(option.getBarrierOptionParams()));
+        this.setUnderlying(option.getUnderlying().copy());
+        this.setVanillaOptionParams(option.getVanillaOptionParams().copy());
+        if (option.getVolatilitySurface() != null) {
+            this.setVolatilitySurface(option.getVolatilitySurface().copy());
+        }
+        this.setBarrierOptionParams(option.getBarrierOptionParams().copy());
         this.setCash(option.getRebate());
+        //看涨看跌由障碍方向决定, 和障碍期权本身的看涨看跌无关
+        refreshOptionType();
     }
 
     private double cash = 1.0;
@@ -205,6 +208,62 @@ public class BinaryBarrierOption extends BaseSingleOption implements Serializabl
         }
     }
 
+    @Override
+    public boolean hasMonteCarloPathVisitor() {
+        return true;
+    }
+
+    /**
+     * survival为到当前时间点为止没有触碰障碍的概率, 不修正时只能是0或1;
+     * 触碰时支付的按每一步触碰的概率在这一步末支付; 触碰障碍后收益就确定了;
+     */
+    @Override
+    public MonteCarloPathVisitor monteCarloPathVisitor(int nodes, String barrierCorrection) {
+        boolean isIn = barrierOptionParams.isIn();
+        boolean isPayAtHit = barrierOptionParams.isPayAtHit();
+        double discount = getDiscountValueByRiskFreeRate();
+        double r = getUnderlying().getRiskFreeRate();
+        double deltaT = getVanillaOptionParams().getTimeRemaining() / nodes;
+        double[] barriers = new double[nodes + 1];
+        double[] hitPayoffs = new double[nodes + 1];
+        for (int i = 0; i <= nodes; i++) {
+            barriers[i] = barrierOptionParams.getBarrierPrice();
+            hitPayoffs[i] = cash * Math.exp(-r * deltaT * i);
+        }
+        boolean isUp = barrierOptionParams.isUp();
+        BarrierMonitor monitor = new BarrierMonitor(isUp ? barriers : null, isUp ? null : barriers,
+                barrierCorrection, getVanillaOptionParams().getVolatility(), deltaT);
+        return new MonteCarloPathVisitor() {
+            private double survival;
+            private double payoff;
+
+            @Override
+            public int visit(int step, double price) {
+                if (step == 0) {
+                    survival = 1;
+                    payoff = 0;
+                }
+                double probability = monitor.crossingProbability(step, price);
+                if (isPayAtHit) {
+                    payoff += survival * probability * hitPayoffs[step];
+                }
+                survival *= 1 - probability;
+                if (survival == 0 || step == nodes) {
+                    if (!isPayAtHit) {
+                        payoff = cash * discount * (isIn ? 1 - survival : survival);
+                    }
+                    return STOP;
+                }
+                return CONTINUE;
+            }
+
+            @Override
+            public double payoff() {
+                return payoff;
+            }
+        };
+    }
+
     @Override
     public double bsm() {
         BinaryBarrierCalculator calculator = new BinaryBarrierCalculator();
@@ -215,7 +274,7 @@ public class BinaryBarrierOption extends BaseSingleOption implements Serializabl
             if (barrierOptionParams.isIn()) {
                 return (calculator.b2() + calculator.b4()) * cash;
             } else {
-                return (getDiscountValueByDividendRate() - calculator.b2() - calculator.b4()) * cash;
+                return (getDiscountValueByRiskFreeRate() - calculator.b2() - calculator.b4()) * cash;
             }
         }
     }
@@ -38,6 +38,11 @@ public class CashOrNothingOption extends BaseSingleOption {
         return true;
     }
 
+    @Override
+    public boolean isMonteCarloTerminalPayoff() {
+        return true;
+    }
+
     @Override
     public double monteCarloPrice(double[] pricePath) {
         double st = pricePath[pricePath.length - 1];
@@ -1,7 +1,9 @@
 package option;
 
+import calculator.utility.BarrierMonitor;
 import calculator.utility.CalculateUtil;
 import calculator.utility.MonteCarlo;
+import calculator.utility.MonteCarloPathVisitor;
 import flanagan.math.VectorMaths;
 
 import java.io.Serializable;
@@ -188,7 +190,6 @@ public class DoubleBarrierOption extends BaseSingleOption implements Serializabl
 
     @Override
     public double monteCarloPrice(double[] pricePath) {
-        EuropeanOption option = new EuropeanOption(this);
         double[] timePoints = MonteCarlo.getTimePoints(getVanillaOptionParams().getTimeRemaining(), pricePath);
         double u = barrierOptionParams.getUpperBarrierPrice();
         double l = barrierOptionParams.getLowerBarrierPrice();
@@ -198,10 +199,70 @@ public class DoubleBarrierOption extends BaseSingleOption implements Serializabl
             double price = pricePath[i];
             double t = timePoints[i];
             if (price < l * Math.exp(lCurve * t) || price > u * Math.exp(uCurve * t)) {
-                return barrierOptionParams.isIn() ? option.monteCarloPrice(pricePath) : 0;
+                return barrierOptionParams.isIn() ? europeanPayoff(pricePath[pricePath.length - 1]) : 0;
             }
         }
-        return barrierOptionParams.isIn() ? 0 : option.monteCarloPrice(pricePath);
+        return barrierOptionParams.isIn() ? 0 : europeanPayoff(pricePath[pricePath.length - 1]);
+    }
+
+    @Override
+    public boolean hasMonteCarloPathVisitor() {
+        return true;
+    }
+
+    /**
+     * 障碍价在每个时间点的值预先算好; survival为到当前时间点为止没有触碰障碍的概率, 不修正时只能是0或1;
+     * 触碰后敲出期权收益为0, 敲入期权只需要到期价格;
+     */
+    @Override
+    public MonteCarloPathVisitor monteCarloPathVisitor(int nodes, String barrierCorrection) {
+        boolean isIn = barrierOptionParams.isIn();
+        double discount = getDiscountValueByRiskFreeRate();
+        double deltaT = getVanillaOptionParams().getTimeRemaining() / nodes;
+        double[] upperBarriers = new double[nodes + 1];
+        double[] lowerBarriers = new double[nodes + 1];
+        for (int i = 0; i <= nodes; i++) {
+            upperBarriers[i] = barrierOptionParams.getUpperBarrierPrice() *
+                    Math.exp(barrierOptionParams.getUpperCurve() * deltaT * i);
+            lowerBarriers[i] = barrierOptionParams.getLowerBarrierPrice() *
+                    Math.exp(barrierOptionParams.getLowerCurve() * deltaT * i);
+        }
+        BarrierMonitor monitor = new BarrierMonitor(upperBarriers, lowerBarriers, barrierCorrection,
+                getVanillaOptionParams().getVolatility(), deltaT);
+        return new MonteCarloPathVisitor() {
+            private double survival;
+            private double payoff;
+
+            @Override
+            public int visit(int step, double price) {
+                if (step == 0) {
+                    survival = 1;
+                }
+                if (survival > 0) {
+                    survival *= 1 - monitor.crossingProbability(step, price);
+                }
+                if (survival == 0) {
+                    if (!isIn) {
+                        payoff = 0;
+                        return STOP;
+                    }
+                    if (step < nodes) {
+                        return TERMINAL_ONLY;
+                    }
+                }
+                if (step == nodes) {
+                    double europeanPayoff = europeanPayoff(price, discount);
+                    payoff = (isIn ? 1 - survival : survival) * europeanPayoff;
+                    return STOP;
+                }
+                return CONTINUE;
+            }
+
+            @Override
+            public double payoff() {
+                return payoff;
+            }
+        };
     }
 
     @Override
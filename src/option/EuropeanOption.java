@@ -3,9 +3,9 @@ package option;
 import adjusted.european.option.Heston;
 import adjusted.european.option.Sabr;
 import calculator.utility.CalculateUtil;
-import flanagan.math.DeepCopy;
-import underlying.BaseUnderlying;
-import volatility.VolatilitySurface;
+import calculator.utility.Greeks;
+import calculator.utility.ImpliedVolatility;
+import calculator.utility.MonteCarloPayoff;
 
 import java.io.Serializable;
 
@@ -20,10 +20,12 @@ public class EuropeanOption extends BaseSingleOption implements Serializable {
         if (option instanceof BinaryBarrierOption) {
             ((BinaryBarrierOption) option).refreshOptionType();
         }
-        this.setUnderlying((BaseUnderlying) DeepCopy.copy(option.getUnderlying()));
-        this.setVanillaOptionParams((VanillaOptionParams) DeepCopy.copy(option.getVanillaOptionParams()));
-        this.setVolatilitySurface((VolatilitySurface) DeepCopy.copy(option.getVolatilitySurface()));
-        this.setPrecision((GreekPrecisionParams) DeepCopy.copy(option.getPrecision()));
+        this.setUnderlying(option.getUnderlying().copy());
+        this.setVanillaOptionParams(option.getVanillaOptionParams().copy());
+        if (option.getVolatilitySurface() != null) {
+            this.setVolatilitySurface(option.getVolatilitySurface().copy());
+        }
+        this.setPrecision(option.getPrecision().copy());
     }
 
     private Heston hestonParams = new Heston();
@@ -77,6 +79,82 @@ public class EuropeanOption extends BaseSingleOption implements Serializable {
         }
     }
 
+    /**
+     * 只有bsm方法并且到期时间和波动率都为正时有解析解;
+     */
+    @Override
+    public boolean hasAnalyticGreeks() {
+        return OPTION_METHOD_BSM.equals(getVanillaOptionParams().getMethodName()) &&
+                getVanillaOptionParams().getTimeRemaining() > 0 && getVanillaOptionParams().getVolatility() > 0;
+    }
+
+    /**
+     * 广义BSM(持有成本b)的解析解, d1, d2和贴现因子只计算一次;
+     * theta和charm是时间流逝(到期时间减少)带来的变动;
+     * rho对无风险利率求导, 持有成本随利率的变动由标的决定(期货为0);
+     */
+    @Override
+    public Greeks analyticGreeks() {
+        double s = getUnderlying().getSpotPrice();
+        double k = getVanillaOptionParams().getStrikePrice();
+        double t = getVanillaOptionParams().getTimeRemaining();
+        double vol = getVanillaOptionParams().getVolatility();
+        double r = getUnderlying().getRiskFreeRate();
+        double b = getUnderlying().getCostOfCarry();
+        int index = getVanillaOptionParams().indexOfOptionType();
+        double sqrtT = Math.sqrt(t);
+        double sigmaT = vol * sqrtT;
+        double d1 = (Math.log(s / k) + (b + vol * vol / 2) * t) / sigmaT;
+        double d2 = d1 - sigmaT;
+        double carryDiscount = Math.exp((b - r) * t);
+        double discount = Math.exp(-r * t);
+        double nd1 = CalculateUtil.normalCDF(index * d1);
+        double nd2 = CalculateUtil.normalCDF(index * d2);
+        double pdf = CalculateUtil.normalPDF(d1);
+
+        double price = index * (s * carryDiscount * nd1 - k * discount * nd2);
+        double delta = index * carryDiscount * nd1;
+        double gamma = carryDiscount * pdf / (s * sigmaT);
+        double vega = s * carryDiscount * pdf * sqrtT;
+        double dPriceDt = s * carryDiscount * pdf * vol / (2 * sqrtT) +
+                index * ((b - r) * s * carryDiscount * nd1 + r * k * discount * nd2);
+        double dPriceDb = index * t * s * carryDiscount * nd1;
+        double rho = -t * price + getUnderlying().getCostOfCarryRateSensitivity() * dPriceDb;
+        double vanna = -carryDiscount * pdf * d2 / vol;
+        double volga = vega * d1 * d2 / vol;
+        double dDeltaDt = carryDiscount * (index * (b - r) * nd1 + pdf * (b / sigmaT - d2 / (2 * t)));
+
+        Greeks greeks = new Greeks();
+        greeks.setPrice(price);
+        greeks.setDelta(delta);
+        greeks.setGamma(gamma);
+        greeks.setVega(vega / 100);
+        greeks.setTheta(-dPriceDt / 365);
+        greeks.setRho(rho / 10000);
+        greeks.setVanna(vanna / 100);
+        greeks.setVolga(volga / 10000);
+        greeks.setCharm(-dDeltaDt / 365);
+        return greeks;
+    }
+
+    @Override
+    public boolean hasAnalyticImpliedVolatility() {
+        return OPTION_METHOD_BSM.equals(getVanillaOptionParams().getMethodName());
+    }
+
+    /**
+     * 远期价格和贴现因子与bsm一致, 在标准化的Black价格上直接求解;
+     */
+    @Override
+    public double analyticImpliedVolatility(double price) {
+        double s = getUnderlying().getSpotPrice();
+        double k = getVanillaOptionParams().getStrikePrice();
+        double t = getVanillaOptionParams().getTimeRemaining();
+        double discount = getDiscountValueByRiskFreeRate();
+        double forward = s * getDiscountValueByDividendRate() / discount;
+        return ImpliedVolatility.black(price, forward, k, t, discount, getVanillaOptionParams().isOptionTypeCall());
+    }
+
     @Override
     public boolean hasFiniteDifferenceMethod() {
         return true;
@@ -104,12 +182,38 @@ public class EuropeanOption extends BaseSingleOption implements Serializable {
         return true;
     }
 
+    @Override
+    public boolean isMonteCarloTerminalPayoff() {
+        return true;
+    }
+
     @Override
     public double monteCarloPrice(double[] pricePath) {
-        double st = pricePath[pricePath.length - 1];
+        return europeanPayoff(pricePath[pricePath.length - 1]);
+    }
+
+    @Override
+    public MonteCarloPayoff monteCarloPayoff(int nodes) {
+        double discount = getDiscountValueByRiskFreeRate();
+        return pricePath -> europeanPayoff(pricePath[nodes], discount);
+    }
+
+    @Override
+    public boolean hasMonteCarloPathwiseMethod() {
+        return true;
+    }
+
+    @Override
+    public double monteCarloPathwiseDerivative(double[] pricePath, double[] pathDerivative) {
+        int n = pricePath.length - 1;
         double k = getVanillaOptionParams().getStrikePrice();
         int index = getVanillaOptionParams().indexOfOptionType();
-        return getDiscountValueByRiskFreeRate() * Math.max(index * (st - k), 0);
+        double discount = getDiscountValueByRiskFreeRate();
+        if (index * (pricePath[n] - k) > 0) {
+            pathDerivative[n] = index * discount;
+            return discount * index * (pricePath[n] - k);
+        }
+        return 0;
     }
 
     public double sabr() {
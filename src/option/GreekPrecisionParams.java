@@ -50,4 +50,13 @@ public class GreekPrecisionParams implements Serializable {
         this.interestRatePrecision = interestRatePrecision;
     }
 
+    public GreekPrecisionParams copy() {
+        GreekPrecisionParams params = new GreekPrecisionParams();
+        params.underlyingPricePrecision = underlyingPricePrecision;
+        params.volatilityPrecision = volatilityPrecision;
+        params.timeRemainingPrecision = timeRemainingPrecision;
+        params.interestRatePrecision = interestRatePrecision;
+        params.eps = eps;
+        return params;
+    }
 }
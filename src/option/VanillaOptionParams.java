@@ -1,7 +1,6 @@
 package option;
 
 import calculator.utility.ConstantString;
-import flanagan.math.DeepCopy;
 
 import java.io.Serializable;
 
@@ -85,7 +84,14 @@ public class VanillaOptionParams implements Serializable {
     }
 
     public VanillaOptionParams copy() {
-        return (VanillaOptionParams) DeepCopy.copy(this);
+        VanillaOptionParams params = new VanillaOptionParams();
+        params.strikePrice = strikePrice;
+        params.timeRemaining = timeRemaining;
+        params.volatility = volatility;
+        params.targetPrice = targetPrice;
+        params.optionType = optionType;
+        params.methodName = methodName;
+        return params;
     }
 
     public int indexOfOptionType() {
@@ -1,17 +1,31 @@
 package test;
 
+import calculator.derivatives.ImpliedVolatilityChainCalculator;
 import calculator.derivatives.SingleOptionAnalysisCalculator;
 import calculator.derivatives.SingleOptionFiniteDifferenceCalculator;
 import calculator.derivatives.SingleOptionMonteCarloCalculator;
+import calculator.utility.CalculateUtil;
+import calculator.utility.FiniteDifference;
+import calculator.utility.Greeks;
+import calculator.utility.ImpliedVolatility;
+import calculator.utility.LogEulerPathKernel;
+import calculator.utility.MonteCarlo;
+import calculator.utility.MonteCarloPathVisitor;
+import calculator.utility.Xoshiro256StarStar;
 import option.*;
 import org.junit.Assert;
 import org.junit.Test;
 import underlying.BaseUnderlying;
 import underlying.Future;
 import underlying.Spot;
+import volatility.VolatilitySurface;
+
+import java.util.ArrayList;
+import java.util.List;
 
 import static test.CalculatorCase.finiteDifferenceCalculator;
 import static test.SingleOptionCase.americanOption;
+import static test.SingleOptionCase.europeanOption;
 import static test.UnderlyingCase.spot;
 
 class CalculatorCase {
@@ -74,4 +88,813 @@ public class OptionTest {
         Assert.assertEquals(0, finiteDifferenceCalculator.getError().getIndex());
     }
 
+    @Test
+    public void testFDTridiagonal() {
+        americanOption.setUnderlying(createUnderlyingCase(spot, 100, 0.1, 0.1));
+        createVanillaOptionParams(100, 0.3, 1, BaseOption.OPTION_TYPE_PUT);
+        americanOption.setVanillaOptionParams(vanillaOptionParams);
+        finiteDifferenceCalculator.setOption(americanOption);
+        finiteDifferenceCalculator.getFiniteDifference().setNumOfTimePoints(101);
+        finiteDifferenceCalculator.getFiniteDifference().setEarlyExerciseMethod(FiniteDifference.EARLY_EXERCISE_PROJECTION);
+        finiteDifferenceCalculator.getFiniteDifference().setUseDenseMatrix(true);
+        finiteDifferenceCalculator.calculatePrice();
+        double densePrice = finiteDifferenceCalculator.getResult();
+        finiteDifferenceCalculator.getFiniteDifference().setUseDenseMatrix(false);
+        finiteDifferenceCalculator.calculatePrice();
+        double tridiagonalPrice = finiteDifferenceCalculator.getResult();
+        finiteDifferenceCalculator.getFiniteDifference().setNumOfTimePoints(501);
+        finiteDifferenceCalculator.getFiniteDifference().setEarlyExerciseMethod(FiniteDifference.EARLY_EXERCISE_BRENNAN_SCHWARTZ);
+        Assert.assertEquals(densePrice, tridiagonalPrice, 1e-10);
+    }
+
+    @Test
+    public void testFDEarlyExercise() {
+        AmericanOption option = new AmericanOption();
+        option.setUnderlying(createUnderlyingCase(new Spot(), 100, 0.1, 0.02));
+        createVanillaOptionParams(100, 0.3, 1, BaseOption.OPTION_TYPE_PUT);
+        option.setVanillaOptionParams(vanillaOptionParams);
+        SingleOptionFiniteDifferenceCalculator calculator = new SingleOptionFiniteDifferenceCalculator();
+        calculator.setOption(option);
+        calculator.getFiniteDifference().setScheme(FiniteDifference.SCHEME_RANNACHER);
+        calculator.calculatePrice();
+        double brennanSchwartzPrice = calculator.getResult();
+        double[] boundary = calculator.getEarlyExerciseBoundary();
+        calculator.getFiniteDifference().setEarlyExerciseMethod(FiniteDifference.EARLY_EXERCISE_PSOR);
+        calculator.calculatePrice();
+        double psorPrice = calculator.getResult();
+        Assert.assertEquals(brennanSchwartzPrice, psorPrice, 1e-6);
+        Assert.assertTrue(boundary[0] > 50 && boundary[0] < 100);
+        Assert.assertTrue(boundary[0] <= boundary[boundary.length / 2]);
+        Assert.assertEquals(0, calculator.getError().getIndex());
+        //PSOR没有收敛时报告达到迭代上限
+        calculator.getFiniteDifference().setPsorMaxIterations(1);
+        calculator.calculatePrice();
+        Assert.assertEquals(3, calculator.getError().getIndex());
+    }
+
+    @Test
+    public void testFDStrikePrices() {
+        AmericanOption option = new AmericanOption();
+        option.setUnderlying(createUnderlyingCase(new Spot(), 100, 0.05, 0.02));
+        createVanillaOptionParams(100, 0.3, 1, BaseOption.OPTION_TYPE_PUT);
+        option.setVanillaOptionParams(vanillaOptionParams);
+        SingleOptionFiniteDifferenceCalculator calculator = new SingleOptionFiniteDifferenceCalculator();
+        calculator.setOption(option);
+        double[] strikes = {80, 90, 100, 110, 120};
+        double[] prices = calculator.calculateStrikePrices(strikes);
+        Assert.assertEquals(0, calculator.getError().getIndex());
+        for (int i = 0; i < strikes.length; i++) {
+            option.getVanillaOptionParams().setStrikePrice(strikes[i]);
+            calculator.calculatePrice();
+            Assert.assertEquals(calculator.getResult(), prices[i], 1e-10);
+        }
+    }
+
+    @Test
+    public void testFDCalculateAll() {
+        americanOption.setUnderlying(createUnderlyingCase(spot, 100, 0.1, 0.1));
+        createVanillaOptionParams(100, 0.3, 1, BaseOption.OPTION_TYPE_PUT);
+        americanOption.setVanillaOptionParams(vanillaOptionParams);
+        finiteDifferenceCalculator.setOption(americanOption);
+        finiteDifferenceCalculator.calculateAll();
+        Greeks greeks = finiteDifferenceCalculator.getGreeks();
+        finiteDifferenceCalculator.calculatePrice();
+        Assert.assertEquals(finiteDifferenceCalculator.getResult(), greeks.getPrice(), 1e-12);
+        finiteDifferenceCalculator.calculateDelta();
+        Assert.assertEquals(finiteDifferenceCalculator.getResult(), greeks.getDelta(), 1e-12);
+        finiteDifferenceCalculator.calculateGamma();
+        Assert.assertEquals(finiteDifferenceCalculator.getResult(), greeks.getGamma(), 1e-12);
+        finiteDifferenceCalculator.calculateTheta();
+        Assert.assertEquals(finiteDifferenceCalculator.getResult(), greeks.getTheta(), 1e-12);
+    }
+
+    @Test
+    public void testFDCrankNicolson() {
+        europeanOption.setUnderlying(createUnderlyingCase(spot, 100, 0.05, 0.02));
+        createVanillaOptionParams(105, 0.25, 1, BaseOption.OPTION_TYPE_PUT);
+        europeanOption.setVanillaOptionParams(vanillaOptionParams);
+        SingleOptionFiniteDifferenceCalculator calculator = new SingleOptionFiniteDifferenceCalculator();
+        calculator.setOption(europeanOption);
+        double implicitError = calculator.getEuropeanOptionError();
+        calculator.getFiniteDifference().setNumOfTimePoints(51);
+        calculator.getFiniteDifference().setScheme(FiniteDifference.SCHEME_CRANK_NICOLSON);
+        double crankNicolsonError = calculator.getEuropeanOptionError();
+        calculator.getFiniteDifference().setScheme(FiniteDifference.SCHEME_RANNACHER);
+        double rannacherError = calculator.getEuropeanOptionError();
+        Assert.assertTrue(Math.abs(crankNicolsonError) < Math.abs(implicitError));
+        Assert.assertTrue(Math.abs(rannacherError) < Math.abs(implicitError));
+    }
+
+    @Test
+    public void testFDSinhGrid() {
+        europeanOption.setUnderlying(createUnderlyingCase(spot, 100, 0.05, 0.02));
+        createVanillaOptionParams(100, 0.25, 1, BaseOption.OPTION_TYPE_PUT);
+        europeanOption.setVanillaOptionParams(vanillaOptionParams);
+        SingleOptionFiniteDifferenceCalculator calculator = new SingleOptionFiniteDifferenceCalculator();
+        calculator.setOption(europeanOption);
+        calculator.getFiniteDifference().setScheme(FiniteDifference.SCHEME_RANNACHER);
+        calculator.getFiniteDifference().setNumOfTimePoints(201);
+        double uniformError = calculator.getEuropeanOptionError();
+        calculator.getFiniteDifference().setGridType(FiniteDifference.GRID_SINH);
+        calculator.getFiniteDifference().setNumOfLowerPricePoints(30);
+        double sinhError = calculator.getEuropeanOptionError();
+        Assert.assertTrue(Math.abs(sinhError) < Math.abs(uniformError));
+
+        //现价不在网格中心时间隔不相等, gamma按非均匀网格的权重计算
+        createVanillaOptionParams(110, 0.25, 1, BaseOption.OPTION_TYPE_PUT);
+        europeanOption.setVanillaOptionParams(vanillaOptionParams);
+        calculator.calculateGamma();
+        double gamma = calculator.getResult();
+        SingleOptionAnalysisCalculator analysisCalculator = new SingleOptionAnalysisCalculator(europeanOption);
+        analysisCalculator.calculateGamma();
+        Assert.assertEquals(analysisCalculator.getResult(), gamma, 5e-6);
+    }
+
+    @Test
+    public void testMonteCarloParallel() {
+        EuropeanOption option = new EuropeanOption();
+        option.setUnderlying(createUnderlyingCase(new Spot(), 100, 0.05, 0.02));
+        createVanillaOptionParams(100, 0.25, 1, BaseOption.OPTION_TYPE_CALL);
+        option.setVanillaOptionParams(vanillaOptionParams);
+        SingleOptionMonteCarloCalculator calculator = new SingleOptionMonteCarloCalculator();
+        calculator.setOption(option);
+        calculator.getMonteCarloParams().setNodes(50);
+        calculator.getMonteCarloParams().setPathSize(20000);
+        calculator.getMonteCarloParams().setSeed(20180615L);
+        calculator.calculatePrice();
+        double serialPrice = calculator.getResult();
+        calculator.getMonteCarloParams().setParallelism(4);
+        calculator.calculatePrice();
+        Assert.assertEquals(0, calculator.getError().getIndex());
+        Assert.assertEquals(serialPrice, calculator.getResult(), 0);
+        Assert.assertEquals(option.bsm(), calculator.getResult(), calculator.getMonteCarloError());
+    }
+
+    @Test
+    public void testMonteCarloDelta() {
+        EuropeanOption option = new EuropeanOption();
+        option.setUnderlying(createUnderlyingCase(new Spot(), 100, 0.05, 0.02));
+        createVanillaOptionParams(100, 0.25, 1, BaseOption.OPTION_TYPE_CALL);
+        option.setVanillaOptionParams(vanillaOptionParams);
+        SingleOptionMonteCarloCalculator calculator = new SingleOptionMonteCarloCalculator();
+        calculator.setOption(option);
+        calculator.getMonteCarloParams().setNodes(20);
+        calculator.getMonteCarloParams().setPathSize(50000);
+        calculator.getMonteCarloParams().setSeed(20180615L);
+        calculator.calculateDelta();
+        double monteCarloDelta = calculator.getResult();
+        SingleOptionAnalysisCalculator analysisCalculator = new SingleOptionAnalysisCalculator();
+        analysisCalculator.setOption(option);
+        analysisCalculator.calculateDelta();
+        Assert.assertEquals(analysisCalculator.getResult(), monteCarloDelta, 0.01);
+        Assert.assertSame(option, calculator.getOption());
+    }
+
+    @Test
+    public void testMonteCarloCalculateAll() {
+        EuropeanOption option = new EuropeanOption();
+        option.setUnderlying(createUnderlyingCase(new Spot(), 100, 0.05, 0.02));
+        createVanillaOptionParams(100, 0.25, 1, BaseOption.OPTION_TYPE_CALL);
+        option.setVanillaOptionParams(vanillaOptionParams);
+        SingleOptionMonteCarloCalculator calculator = new SingleOptionMonteCarloCalculator();
+        calculator.setOption(option);
+        calculator.getMonteCarloParams().setNodes(20);
+        calculator.getMonteCarloParams().setPathSize(50000);
+        calculator.getMonteCarloParams().setSeed(20180615L);
+        calculator.calculateAll();
+        Greeks greeks = calculator.getGreeks();
+        SingleOptionAnalysisCalculator analysisCalculator = new SingleOptionAnalysisCalculator();
+        analysisCalculator.setOption(option);
+        analysisCalculator.calculateAll();
+        Greeks analysisGreeks = analysisCalculator.getGreeks();
+        Assert.assertEquals(analysisGreeks.getPrice(), greeks.getPrice(), calculator.getMonteCarloError());
+        Assert.assertEquals(analysisGreeks.getDelta(), greeks.getDelta(), 0.01);
+        Assert.assertEquals(analysisGreeks.getVega(), greeks.getVega(), 0.01);
+        Assert.assertEquals(analysisGreeks.getTheta(), greeks.getTheta(), 0.002);
+        Assert.assertEquals(analysisGreeks.getRho(), greeks.getRho(), 0.0002);
+        calculator.calculateVega();
+        Assert.assertEquals(greeks.getVega(), calculator.getResult(), 1e-12);
+    }
+
+    @Test
+    public void testMonteCarloPathwiseGreeks() {
+        EuropeanOption option = new EuropeanOption();
+        option.setUnderlying(createUnderlyingCase(new Spot(), 100, 0.05, 0.02));
+        createVanillaOptionParams(100, 0.25, 1, BaseOption.OPTION_TYPE_PUT);
+        option.setVanillaOptionParams(vanillaOptionParams);
+        SingleOptionMonteCarloCalculator calculator = new SingleOptionMonteCarloCalculator();
+        calculator.setOption(option);
+        calculator.getMonteCarloParams().setNodes(10);
+        calculator.getMonteCarloParams().setPathSize(50000);
+        calculator.getMonteCarloParams().setSeed(20180615L);
+        calculator.getMonteCarloParams().setGreekMethod(MonteCarlo.GREEK_METHOD_PATHWISE);
+        calculator.calculateAll();
+        Greeks greeks = calculator.getGreeks();
+        SingleOptionAnalysisCalculator analysisCalculator = new SingleOptionAnalysisCalculator();
+        analysisCalculator.setOption(option);
+        analysisCalculator.calculateAll();
+        Greeks analysisGreeks = analysisCalculator.getGreeks();
+        Assert.assertEquals(analysisGreeks.getDelta(), greeks.getDelta(), 0.01);
+        Assert.assertEquals(analysisGreeks.getVega(), greeks.getVega(), 0.01);
+        Assert.assertEquals(analysisGreeks.getRho(), greeks.getRho(), 0.0002);
+    }
+
+    @Test
+    public void testMonteCarloLikelihoodRatioGreeks() {
+        CashOrNothingOption option = new CashOrNothingOption();
+        option.setUnderlying(createUnderlyingCase(new Spot(), 100, 0.05, 0.02));
+        createVanillaOptionParams(100, 0.25, 1, BaseOption.OPTION_TYPE_CALL);
+        option.setVanillaOptionParams(vanillaOptionParams);
+        option.setCash(10);
+        SingleOptionMonteCarloCalculator calculator = new SingleOptionMonteCarloCalculator();
+        calculator.setOption(option);
+        calculator.getMonteCarloParams().setNodes(1);
+        calculator.getMonteCarloParams().setPathSize(100000);
+        calculator.getMonteCarloParams().setSeed(20180615L);
+        calculator.getMonteCarloParams().setGreekMethod(MonteCarlo.GREEK_METHOD_PATHWISE);
+        calculator.calculateDelta();
+        double monteCarloDelta = calculator.getResult();
+        SingleOptionAnalysisCalculator analysisCalculator = new SingleOptionAnalysisCalculator();
+        analysisCalculator.setOption(option);
+        analysisCalculator.calculateDelta();
+        Assert.assertEquals(analysisCalculator.getResult(), monteCarloDelta, 0.005);
+    }
+
+    @Test
+    public void testMonteCarloVarianceReduction() {
+        AsianOption option = new AsianOption();
+        option.setUnderlying(createUnderlyingCase(new Spot(), 100, 0.05, 0.02));
+        createVanillaOptionParams(100, 0.25, 1, BaseOption.OPTION_TYPE_PUT);
+        option.setVanillaOptionParams(vanillaOptionParams);
+        double[] observeTimePoints = new double[12];
+        for (int i = 0; i < observeTimePoints.length; i++) {
+            observeTimePoints[i] = (i + 1) / 12.0;
+        }
+        option.setObserveTimePoints(observeTimePoints);
+        SingleOptionMonteCarloCalculator calculator = new SingleOptionMonteCarloCalculator();
+        calculator.setOption(option);
+        calculator.getMonteCarloParams().setNodes(24);
+        calculator.getMonteCarloParams().setPathSize(50000);
+        calculator.getMonteCarloParams().setSeed(20180615L);
+        calculator.calculatePrice();
+        double price = calculator.getResult();
+        double error = calculator.getMonteCarloError();
+        calculator.getMonteCarloParams().setControlVariate(true);
+        calculator.getMonteCarloParams().setAntithetic(true);
+        calculator.calculatePrice();
+        Assert.assertEquals(price, calculator.getResult(), error);
+        Assert.assertTrue(calculator.getMonteCarloError() < error / 10);
+        Assert.assertTrue(calculator.getVarianceReductionFactor() > 100);
+    }
+
+    @Test
+    public void testMonteCarloSobol() {
+        AsianOption option = new AsianOption();
+        option.setUnderlying(createUnderlyingCase(new Spot(), 100, 0.05, 0.02));
+        createVanillaOptionParams(100, 0.25, 1, BaseOption.OPTION_TYPE_CALL);
+        option.setVanillaOptionParams(vanillaOptionParams);
+        double[] observeTimePoints = new double[16];
+        for (int i = 0; i < observeTimePoints.length; i++) {
+            observeTimePoints[i] = (i + 1) / 16.0;
+        }
+        option.setObserveTimePoints(observeTimePoints);
+        SingleOptionMonteCarloCalculator calculator = new SingleOptionMonteCarloCalculator();
+        calculator.setOption(option);
+        calculator.getMonteCarloParams().setNodes(16);
+        calculator.getMonteCarloParams().setPathSize(32768);
+        calculator.getMonteCarloParams().setSeed(20180615L);
+        calculator.calculatePrice();
+        double price = calculator.getResult();
+        double error = calculator.getMonteCarloError();
+        calculator.getMonteCarloParams().setRandomNumberType(MonteCarlo.RANDOM_NUMBER_SOBOL);
+        calculator.getMonteCarloParams().setParallelism(4);
+        calculator.calculatePrice();
+        Assert.assertEquals(price, calculator.getResult(), error);
+        Assert.assertTrue(calculator.getMonteCarloError() < error / 5);
+    }
+
+    @Test
+    public void testMonteCarloAdaptive() {
+        EuropeanOption option = new EuropeanOption();
+        option.setUnderlying(createUnderlyingCase(new Spot(), 100, 0.05, 0.02));
+        createVanillaOptionParams(100, 0.25, 1, BaseOption.OPTION_TYPE_CALL);
+        option.setVanillaOptionParams(vanillaOptionParams);
+        SingleOptionMonteCarloCalculator calculator = new SingleOptionMonteCarloCalculator();
+        calculator.setOption(option);
+        MonteCarlo monteCarlo = calculator.getMonteCarloParams();
+        monteCarlo.setNodes(1);
+        monteCarlo.setPathSize(5000);
+        monteCarlo.setSeed(20180615L);
+        calculator.calculatePrice();
+        double error = calculator.getMonteCarloError();
+        monteCarlo.setTargetError(error / 4);
+        monteCarlo.setMaxPathSize(1000000);
+        calculator.calculatePrice();
+        Assert.assertTrue(calculator.getMonteCarloError() <= error / 4);
+        Assert.assertTrue(calculator.getMonteCarloError() > error / 8);
+        Assert.assertEquals(option.bsm(), calculator.getResult(), error / 4 * 1.5);
+        monteCarlo.setMaxPathSize(20000);
+        calculator.calculatePrice();
+        Assert.assertTrue(calculator.getMonteCarloError() > error / 4);
+    }
+
+    @Test
+    public void testNormalRandom() {
+        double first = CalculateUtil.normalRandomWithSeed(20180615L);
+        double second = CalculateUtil.normalRandom();
+        Assert.assertEquals(first, CalculateUtil.normalRandomWithSeed(20180615L), 0.0);
+        Assert.assertEquals(second, CalculateUtil.normalRandom(), 0.0);
+        Assert.assertTrue(first != second);
+
+        double[] z = new double[1000000];
+        CalculateUtil.fillNormalRandom(new Xoshiro256StarStar(20180615L), z);
+        double mean = 0;
+        double variance = 0;
+        double tail = 0;
+        for (double x : z) {
+            mean += x / z.length;
+            variance += x * x / z.length;
+            tail += Math.abs(x) > 2 ? 1.0 / z.length : 0;
+        }
+        Assert.assertEquals(0, mean, 0.005);
+        Assert.assertEquals(1, variance, 0.005);
+        Assert.assertEquals(2 * (1 - CalculateUtil.normalCDF(2)), tail, 0.001);
+    }
+
+    @Test
+    public void testLogEulerPathKernel() {
+        LogEulerPathKernel kernel = new LogEulerPathKernel(100, 0.03, 0.25, 1, 50);
+        Xoshiro256StarStar random = new Xoshiro256StarStar(20180615L);
+        double deltaT = 1.0 / 50;
+        double[] randomNums = new double[50];
+        double[] pricePath = new double[51];
+        double[] terminalPath = new double[51];
+        for (int p = 0; p < 7; p++) {
+            random.fillGaussian(randomNums);
+            kernel.fillPath(randomNums, pricePath);
+            kernel.fillTerminalPrice(randomNums, terminalPath);
+            double price = 100;
+            for (int i = 0; i < 50; i++) {
+                price *= Math.exp((0.03 - 0.25 * 0.25 / 2) * deltaT + 0.25 * Math.sqrt(deltaT) * randomNums[i]);
+                Assert.assertEquals(price, pricePath[i + 1], 1e-10);
+            }
+            Assert.assertEquals(pricePath[50], terminalPath[50], 1e-10);
+        }
+    }
+
+    @Test
+    public void testMonteCarloPathVisitor() {
+        List<BaseSingleOption> options = new ArrayList<>();
+        for (String barrierType : new String[]{BaseOption.BARRIER_TYPE_IN, BaseOption.BARRIER_TYPE_OUT}) {
+            for (String payoffType : new String[]{BaseOption.PAYOFF_TYPE_HIT, BaseOption.PAYOFF_TYPE_EXPIRE}) {
+                BarrierOptionParams barrierOptionParams = new BarrierOptionParams();
+                barrierOptionParams.setBarrierType(barrierType);
+                barrierOptionParams.setBarrierDirection(BaseOption.BARRIER_DIRECTION_DOWN);
+                barrierOptionParams.setBarrierPrice(90);
+                barrierOptionParams.setPayoffType(payoffType);
+                barrierOptionParams.setUpperBarrierPrice(120);
+                barrierOptionParams.setLowerBarrierPrice(85);
+                BarrierOption barrier = new BarrierOption();
+                barrier.setBarrierOptionParams(barrierOptionParams);
+                barrier.setRebate(3);
+                BinaryBarrierOption binaryBarrier = new BinaryBarrierOption();
+                binaryBarrier.setBarrierOptionParams(barrierOptionParams);
+                DoubleBarrierOption doubleBarrier = new DoubleBarrierOption();
+                doubleBarrier.setBarrierOptionParams(barrierOptionParams);
+                options.add(barrier);
+                options.add(binaryBarrier);
+                options.add(doubleBarrier);
+            }
+        }
+        createVanillaOptionParams(100, 0.3, 0.5, BaseOption.OPTION_TYPE_CALL);
+        int nodes = 50;
+        MonteCarlo monteCarlo = new MonteCarlo(nodes, 1);
+        Xoshiro256StarStar random = new Xoshiro256StarStar(20180615L);
+        double[] randomNums = new double[nodes];
+        double[] pricePath = new double[nodes + 1];
+        for (BaseSingleOption option : options) {
+            option.setUnderlying(createUnderlyingCase(new Spot(), 100, 0.05, 0.02));
+            option.setVanillaOptionParams(vanillaOptionParams);
+            LogEulerPathKernel kernel = new LogEulerPathKernel(option, nodes);
+            MonteCarloPathVisitor visitor = option.monteCarloPathVisitor(nodes, MonteCarlo.BARRIER_CORRECTION_NONE);
+            for (int i = 0; i < 1000; i++) {
+                random.fillGaussian(randomNums);
+                monteCarlo.fillMonteCarloPath(option, randomNums, pricePath);
+                Assert.assertEquals(option.monteCarloPrice(pricePath), kernel.visitPath(randomNums, visitor), 1e-10);
+            }
+        }
+    }
+
+    @Test
+    public void testMonteCarloBarrierCorrection() {
+        BarrierOption option = new BarrierOption();
+        option.setUnderlying(createUnderlyingCase(new Spot(), 100, 0.05, 0.02));
+        createVanillaOptionParams(100, 0.3, 0.5, BaseOption.OPTION_TYPE_CALL);
+        option.setVanillaOptionParams(vanillaOptionParams);
+        BarrierOptionParams barrierOptionParams = new BarrierOptionParams();
+        barrierOptionParams.setBarrierType(BaseOption.BARRIER_TYPE_IN);
+        barrierOptionParams.setBarrierDirection(BaseOption.BARRIER_DIRECTION_DOWN);
+        barrierOptionParams.setBarrierPrice(90);
+        option.setBarrierOptionParams(barrierOptionParams);
+        //连续监测的向下敲入看涨期权, Reiner-Rubinstein公式;
+        double continuousPrice = 1.8653595635732305;
+        SingleOptionMonteCarloCalculator calculator = new SingleOptionMonteCarloCalculator();
+        calculator.setOption(option);
+        calculator.getMonteCarloParams().setNodes(50);
+        calculator.getMonteCarloParams().setPathSize(50000);
+        calculator.getMonteCarloParams().setSeed(20180615L);
+        calculator.calculatePrice();
+        double discretePrice = calculator.getResult();
+        calculator.getMonteCarloParams().setBarrierCorrection(MonteCarlo.BARRIER_CORRECTION_BROWNIAN_BRIDGE);
+        calculator.calculatePrice();
+        double error = calculator.getMonteCarloError();
+        Assert.assertEquals(continuousPrice, calculator.getResult(), error);
+        Assert.assertTrue(continuousPrice - discretePrice > error);
+        calculator.getMonteCarloParams().setBarrierCorrection(MonteCarlo.BARRIER_CORRECTION_SHIFT);
+        calculator.calculatePrice();
+        Assert.assertEquals(continuousPrice, calculator.getResult(), calculator.getMonteCarloError());
+    }
+
+    @Test
+    public void testMonteCarloPayoff() {
+        AsianOption option = new AsianOption();
+        option.setUnderlying(createUnderlyingCase(new Spot(), 100, 0.05, 0.02));
+        createVanillaOptionParams(100, 0.25, 1, BaseOption.OPTION_TYPE_CALL);
+        option.setVanillaOptionParams(vanillaOptionParams);
+        option.setObserveTimePoints(new double[]{0.3, 0.55, 1.0});
+        //路径线性增长, 插值后的均值等于观察时间点上的值的均值;
+        double[] pricePath = {100, 104, 108, 112, 116};
+        double avg = ((100 + 16 * 0.3) + (100 + 16 * 0.55) + 116) / 3;
+        double expected = Math.max(avg - 100, 0) * option.getDiscountValueByRiskFreeRate();
+        Assert.assertEquals(expected, option.monteCarloPayoff(4).price(pricePath), 1e-10);
+        Assert.assertEquals(expected, option.monteCarloPrice(pricePath), 1e-10);
+        Assert.assertEquals(option.monteCarloControlVariate(pricePath),
+                option.monteCarloControlVariatePayoff(4).price(pricePath), 1e-12);
+    }
+
+    @Test
+    public void testScenarioCopy() {
+        EuropeanOption option = new EuropeanOption();
+        option.setUnderlying(createUnderlyingCase(new Spot(), 100, 0.05, 0.02));
+        createVanillaOptionParams(100, 0.25, 1, BaseOption.OPTION_TYPE_CALL);
+        option.setVanillaOptionParams(vanillaOptionParams.copy());
+        option.setVolatilitySurface(new VolatilitySurface(0.25));
+        double price = option.bsm();
+        BaseSingleOption copy = option.scenarioCopy();
+        Assert.assertTrue(copy instanceof EuropeanOption);
+        Assert.assertSame(option.getVolatilitySurface(), copy.getVolatilitySurface());
+        copy.getUnderlying().setSpotPrice(110);
+        copy.getVanillaOptionParams().setVolatility(0.3);
+        Assert.assertEquals(100, option.getUnderlying().getSpotPrice(), 0.0);
+        Assert.assertEquals(0.25, option.getVanillaOptionParams().getVolatility(), 0.0);
+        Assert.assertEquals(price, option.bsm(), 0.0);
+        Assert.assertTrue(((EuropeanOption) copy).bsm() > price);
+    }
+
+    @Test
+    public void testAnalyticGreeks() {
+        for (BaseUnderlying underlying : new BaseUnderlying[]{new Spot(), new Future()}) {
+            for (String optionType : new String[]{BaseOption.OPTION_TYPE_CALL, BaseOption.OPTION_TYPE_PUT}) {
+                EuropeanOption option = new EuropeanOption();
+                option.setUnderlying(createUnderlyingCase(underlying, 100, 0.05, 0.02));
+                createVanillaOptionParams(95, 0.25, 0.75, optionType);
+                option.setVanillaOptionParams(vanillaOptionParams.copy());
+                SingleOptionAnalysisCalculator calculator = new SingleOptionAnalysisCalculator(option);
+                calculator.calculateAll();
+                Assert.assertEquals(0, calculator.getError().getIndex());
+                Greeks greeks = calculator.getGreeks();
+                Assert.assertEquals(option.bsm(), greeks.getPrice(), 1e-10);
+
+                double h = 1e-4;
+                EuropeanOption lower = (EuropeanOption) option.scenarioCopy();
+                EuropeanOption upper = (EuropeanOption) option.scenarioCopy();
+                lower.getUnderlying().setSpotPrice(100 - h);
+                upper.getUnderlying().setSpotPrice(100 + h);
+                Assert.assertEquals((upper.bsm() - lower.bsm()) / (2 * h), greeks.getDelta(), 1e-6);
+                Assert.assertEquals((upper.analyticGreeks().getDelta() - lower.analyticGreeks().getDelta()) / (2 * h),
+                        greeks.getGamma(), 1e-6);
+
+                lower = (EuropeanOption) option.scenarioCopy();
+                upper = (EuropeanOption) option.scenarioCopy();
+                lower.getVanillaOptionParams().setVolatility(0.25 - h);
+                upper.getVanillaOptionParams().setVolatility(0.25 + h);
+                Assert.assertEquals((upper.bsm() - lower.bsm()) / (2 * h) / 100, greeks.getVega(), 1e-6);
+                Assert.assertEquals((upper.analyticGreeks().getDelta() - lower.analyticGreeks().getDelta()) / (2 * h) / 100,
+                        greeks.getVanna(), 1e-6);
+                Assert.assertEquals((upper.analyticGreeks().getVega() - lower.analyticGreeks().getVega()) / (2 * h) / 100,
+                        greeks.getVolga(), 1e-6);
+
+                lower = (EuropeanOption) option.scenarioCopy();
+                upper = (EuropeanOption) option.scenarioCopy();
+                lower.getVanillaOptionParams().setTimeRemaining(0.75 - h);
+                upper.getVanillaOptionParams().setTimeRemaining(0.75 + h);
+                Assert.assertEquals((lower.bsm() - upper.bsm()) / (2 * h) / 365, greeks.getTheta(), 1e-6);
+                Assert.assertEquals((lower.analyticGreeks().getDelta() - upper.analyticGreeks().getDelta()) / (2 * h) / 365,
+                        greeks.getCharm(), 1e-6);
+
+                lower = (EuropeanOption) option.scenarioCopy();
+                upper = (EuropeanOption) option.scenarioCopy();
+                lower.getUnderlying().setRiskFreeRate(0.05 - h);
+                upper.getUnderlying().setRiskFreeRate(0.05 + h);
+                Assert.assertEquals((upper.bsm() - lower.bsm()) / (2 * h) / 10000, greeks.getRho(), 1e-8);
+            }
+        }
+    }
+
+    @Test
+    public void testBlackImpliedVolatility() {
+        for (BaseUnderlying underlying : new BaseUnderlying[]{new Spot(), new Future()}) {
+            for (String optionType : new String[]{BaseOption.OPTION_TYPE_CALL, BaseOption.OPTION_TYPE_PUT}) {
+                for (double k : new double[]{80, 100, 125}) {
+                    for (double t : new double[]{0.1, 1, 5}) {
+                        for (double vol : new double[]{0.2, 0.6}) {
+                            EuropeanOption option = new EuropeanOption();
+                            option.setUnderlying(createUnderlyingCase(underlying, 100, 0.05, 0.02));
+                            createVanillaOptionParams(k, vol, t, optionType);
+                            option.setVanillaOptionParams(vanillaOptionParams.copy());
+                            option.getVanillaOptionParams().setTargetPrice(option.bsm());
+                            option.getVanillaOptionParams().setVolatility(0.9);
+                            SingleOptionAnalysisCalculator calculator = new SingleOptionAnalysisCalculator(option);
+                            calculator.calculateImpliedVolatility();
+                            Assert.assertEquals(0, calculator.getError().getIndex());
+                            Assert.assertEquals(vol, calculator.getResult(), 1e-10);
+                            Assert.assertEquals(vol, option.getVanillaOptionParams().getVolatility(), 1e-10);
+                        }
+                    }
+                }
+            }
+        }
+        //σ√T较小, 中等虚实值; 带和不带迭代初值
+        double forward = 100;
+        for (double k = 80; k <= 125; k += 0.5) {
+            for (double t : new double[]{0.02, 0.1, 0.25}) {
+                for (double vol = 0.05; vol <= 0.5; vol += 0.01) {
+                    boolean isCall = k >= forward;
+                    String optionType = isCall ? BaseOption.OPTION_TYPE_CALL : BaseOption.OPTION_TYPE_PUT;
+                    EuropeanOption european = new EuropeanOption();
+                    european.setUnderlying(createUnderlyingCase(new Future(), forward, 0, 0));
+                    createVanillaOptionParams(k, vol, t, optionType);
+                    european.setVanillaOptionParams(vanillaOptionParams.copy());
+                    double price = european.bsm();
+                    //价格太小时bsm价格本身的相对精度不够
+                    if (price < 1e-6) {
+                        continue;
+                    }
+                    for (double initialVol : new double[]{Double.NaN, 0.05, 0.2, 0.5, 2}) {
+                        double impliedVol = ImpliedVolatility.black(price, forward, k, t, 1, isCall, initialVol);
+                        Assert.assertEquals(vol, impliedVol, 1e-8 * vol);
+                    }
+                }
+            }
+        }
+        EuropeanOption option = new EuropeanOption();
+        option.setUnderlying(createUnderlyingCase(new Spot(), 100, 0.05, 0.02));
+        createVanillaOptionParams(92, 0.1, 0.25, BaseOption.OPTION_TYPE_PUT);
+        option.setVanillaOptionParams(vanillaOptionParams.copy());
+        option.getVanillaOptionParams().setTargetPrice(option.bsm());
+        SingleOptionAnalysisCalculator calculator = new SingleOptionAnalysisCalculator(option);
+        calculator.calculateImpliedVolatility();
+        Assert.assertEquals(0, calculator.getError().getIndex());
+        Assert.assertEquals(0.1, calculator.getResult(), 1e-10);
+
+        createVanillaOptionParams(100, 0.2, 1, BaseOption.OPTION_TYPE_CALL);
+        option.setVanillaOptionParams(vanillaOptionParams.copy());
+        option.getVanillaOptionParams().setTargetPrice(100);
+        calculator.calculateImpliedVolatility();
+        Assert.assertEquals(4, calculator.getError().getIndex());
+
+        //迭代初值比真实波动率小很多时也要收敛到正确结果
+        double[][] farGuesses = {{90, 0.1, 1.5, 0.01}, {50, 1, 1.2, 0.02}, {100, 0.5, 0.8, 0.001}};
+        for (double[] guess : farGuesses) {
+            EuropeanOption european = new EuropeanOption();
+            european.setUnderlying(createUnderlyingCase(new Future(), 100, 0, 0));
+            createVanillaOptionParams(guess[0], guess[2], guess[1], BaseOption.OPTION_TYPE_PUT);
+            european.setVanillaOptionParams(vanillaOptionParams.copy());
+            double price = european.bsm();
+            double impliedVol = ImpliedVolatility.black(price, 100, guess[0], guess[1], 1, false, guess[3]);
+            Assert.assertEquals(guess[2], impliedVol, 1e-8 * guess[2]);
+        }
+    }
+
+    @Test
+    public void testImpliedVolatilityChain() {
+        int n = 81;
+        double t = 0.5;
+        BaseUnderlying underlying = createUnderlyingCase(new Spot(), 100, 0.05, 0.02);
+        double[] strikes = new double[n];
+        double[] prices = new double[n];
+        double[] vols = new double[n];
+        boolean[] isCall = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            strikes[i] = 60 + i;
+            vols[i] = 0.2 + 0.5 * Math.pow(Math.log(strikes[i] / 100), 2);
+            isCall[i] = strikes[i] >= 100;
+            EuropeanOption option = new EuropeanOption();
+            option.setUnderlying(underlying.copy());
+            createVanillaOptionParams(strikes[i], vols[i], t,
+                    isCall[i] ? BaseOption.OPTION_TYPE_CALL : BaseOption.OPTION_TYPE_PUT);
+            option.setVanillaOptionParams(vanillaOptionParams.copy());
+            prices[i] = option.bsm();
+        }
+        prices[n - 1] = -1;
+        ImpliedVolatilityChainCalculator calculator = new ImpliedVolatilityChainCalculator(underlying, t);
+        calculator.calculateImpliedVolatility(strikes, prices, isCall);
+        double[] result = calculator.getVolatilities().clone();
+        for (int i = 0; i < n - 1; i++) {
+            Assert.assertEquals(0, calculator.getErrors()[i]);
+            Assert.assertEquals(vols[i], result[i], 1e-10);
+        }
+        Assert.assertEquals(4, calculator.getErrors()[n - 1]);
+        Assert.assertTrue(Double.isNaN(result[n - 1]));
+
+        calculator.setChunkSize(10);
+        calculator.setParallelism(4);
+        calculator.calculateImpliedVolatility(strikes, prices, isCall);
+        for (int i = 0; i < n - 1; i++) {
+            Assert.assertEquals(0, calculator.getErrors()[i]);
+            Assert.assertEquals(result[i], calculator.getVolatilities()[i], 1e-14);
+        }
+
+        //相邻行权价的波动率跳动很大, 初值很差时也要收敛到正确结果
+        for (int i = 0; i < n; i++) {
+            vols[i] = i % 2 == 0 ? 0.92 : 0.06;
+            EuropeanOption option = new EuropeanOption();
+            option.setUnderlying(underlying.copy());
+            createVanillaOptionParams(strikes[i], vols[i], t,
+                    isCall[i] ? BaseOption.OPTION_TYPE_CALL : BaseOption.OPTION_TYPE_PUT);
+            option.setVanillaOptionParams(vanillaOptionParams.copy());
+            prices[i] = option.bsm();
+        }
+        calculator.setParallelism(1);
+        calculator.calculateImpliedVolatility(strikes, prices, isCall);
+        for (int i = 0; i < n; i++) {
+            Assert.assertEquals(0, calculator.getErrors()[i]);
+            //都是虚值期权, 价格太小时波动率没有精度
+            if (prices[i] > 1e-6) {
+                Assert.assertEquals(vols[i], calculator.getVolatilities()[i], 1e-8);
+            }
+        }
+
+        //第一个报价的波动率很低, 第二个报价从远小于真实值的初值出发, 失败的结果不能传给后面的报价
+        double[] farStrikes = {100, 90, 60, 80, 100, 120};
+        double[] farVols = {0.01, 1.5, 0.3, 0.3, 0.3, 0.3};
+        boolean[] farIsCall = {true, false, false, false, true, true};
+        double[] farPrices = new double[farStrikes.length];
+        for (int i = 0; i < farStrikes.length; i++) {
+            EuropeanOption option = new EuropeanOption();
+            option.setUnderlying(underlying.copy());
+            createVanillaOptionParams(farStrikes[i], farVols[i], 0.1,
+                    farIsCall[i] ? BaseOption.OPTION_TYPE_CALL : BaseOption.OPTION_TYPE_PUT);
+            option.setVanillaOptionParams(vanillaOptionParams.copy());
+            farPrices[i] = option.bsm();
+        }
+        calculator.setTimeRemaining(0.1);
+        calculator.calculateImpliedVolatility(farStrikes, farPrices, farIsCall);
+        for (int i = 0; i < farStrikes.length; i++) {
+            Assert.assertEquals(0, calculator.getErrors()[i]);
+            Assert.assertEquals(farVols[i], calculator.getVolatilities()[i], 1e-8);
+        }
+    }
+
+    @Test
+    public void testPricerRegistry() {
+        EuropeanOption option = new EuropeanOption();
+        option.setUnderlying(createUnderlyingCase(new Spot(), 100, 0.05, 0.02));
+        createVanillaOptionParams(95, 0.25, 0.75, BaseOption.OPTION_TYPE_CALL);
+        option.setVanillaOptionParams(vanillaOptionParams.copy());
+        SingleOptionAnalysisCalculator calculator = new SingleOptionAnalysisCalculator(option);
+        Assert.assertTrue(calculator.hasMethod());
+        calculator.calculatePrice();
+        Assert.assertEquals(0, calculator.getError().getIndex());
+        Assert.assertEquals(option.bsm(), calculator.getResult(), 0);
+
+        for (String methodName : new String[]{"noSuchMethod", "toString", "hashCode"}) {
+            option.getVanillaOptionParams().setMethodName(methodName);
+            Assert.assertFalse(calculator.hasMethod());
+            calculator.calculatePrice();
+            Assert.assertEquals(1, calculator.getError().getIndex());
+        }
+
+        option.getVanillaOptionParams().setMethodName(BaseOption.OPTION_METHOD_BSM);
+        option.setUnderlying(null);
+        calculator.calculatePrice();
+        Assert.assertEquals(2, calculator.getError().getIndex());
+    }
+
+    @Test
+    public void testBarrierBsm() {
+        for (BaseUnderlying underlying : new BaseUnderlying[]{new Spot(), new Future()}) {
+            for (String optionType : new String[]{BaseOption.OPTION_TYPE_CALL, BaseOption.OPTION_TYPE_PUT}) {
+                for (String direction : new String[]{BaseOption.BARRIER_DIRECTION_UP,
+                        BaseOption.BARRIER_DIRECTION_DOWN}) {
+                    for (double k : new double[]{90, 100, 110}) {
+                        double[] prices = new double[2];
+                        String[] types = new String[]{BaseOption.BARRIER_TYPE_IN, BaseOption.BARRIER_TYPE_OUT};
+                        for (int i = 0; i < 2; i++) {
+                            BarrierOption option = new BarrierOption();
+                            option.setUnderlying(createUnderlyingCase(underlying, 100, 0.05, 0.02));
+                            createVanillaOptionParams(k, 0.25, 0.75, optionType);
+                            option.setVanillaOptionParams(vanillaOptionParams.copy());
+                            BarrierOptionParams barrierOptionParams = new BarrierOptionParams();
+                            barrierOptionParams.setBarrierType(types[i]);
+                            barrierOptionParams.setBarrierDirection(direction);
+                            boolean isUp = BaseOption.BARRIER_DIRECTION_UP.equals(direction);
+                            barrierOptionParams.setBarrierPrice(isUp ? 120 : 85);
+                            option.setBarrierOptionParams(barrierOptionParams);
+                            prices[i] = option.bsm();
+                        }
+                        EuropeanOption european = new EuropeanOption();
+                        european.setUnderlying(createUnderlyingCase(underlying, 100, 0.05, 0.02));
+                        european.setVanillaOptionParams(vanillaOptionParams.copy());
+                        Assert.assertEquals(european.bsm(), prices[0] + prices[1], 1e-10);
+                    }
+                }
+            }
+        }
+        //Haug (2007) 表4-13: s = 100, r = 0.08, b = 0.04, t = 0.5, vol = 0.25, 回扣为3, 障碍价为95或105
+        String[] directions = {BaseOption.BARRIER_DIRECTION_DOWN, BaseOption.BARRIER_DIRECTION_UP};
+        String[] types = {BaseOption.BARRIER_TYPE_OUT, BaseOption.BARRIER_TYPE_IN};
+        String[] optionTypes = {BaseOption.OPTION_TYPE_CALL, BaseOption.OPTION_TYPE_PUT};
+        //按看涨/看跌, 向下/向上, 敲出/敲入排列, 每行是执行价90, 100, 110的价格
+        double[][] haugPrices = {
+                {9.0246, 6.7924, 4.8759}, {7.7627, 4.0109, 2.0576},
+                {2.6789, 2.3580, 2.3453}, {14.1112, 8.4482, 4.5910},
+                {2.2798, 2.2947, 2.6252}, {2.9586, 6.5677, 11.9752},
+                {3.7760, 5.4932, 7.5187}, {1.4653, 3.3721, 7.0846}};
+        double[] strikes = {90, 100, 110};
+        for (int i = 0; i < haugPrices.length; i++) {
+            for (int j = 0; j < strikes.length; j++) {
+                BarrierOption option = new BarrierOption();
+                option.setUnderlying(createUnderlyingCase(new Spot(), 100, 0.08, 0.04));
+                createVanillaOptionParams(strikes[j], 0.25, 0.5, optionTypes[i / 4]);
+                option.setVanillaOptionParams(vanillaOptionParams.copy());
+                String direction = directions[i / 2 % 2];
+                BarrierOptionParams barrierOptionParams = new BarrierOptionParams();
+                barrierOptionParams.setBarrierType(types[i % 2]);
+                barrierOptionParams.setBarrierDirection(direction);
+                barrierOptionParams.setBarrierPrice(BaseOption.BARRIER_DIRECTION_UP.equals(direction) ? 105 : 95);
+                option.setBarrierOptionParams(barrierOptionParams);
+                option.setRebate(3);
+                Assert.assertEquals(haugPrices[i][j], option.bsm(), 5e-5);
+            }
+        }
+    }
+
+    @Test
+    public void testCalculateAllRestoresOption() {
+        BarrierOption option = new BarrierOption();
+        option.setUnderlying(createUnderlyingCase(new Spot(), 100, 0.05, 0.02));
+        createVanillaOptionParams(100, 0.25, 0.75, BaseOption.OPTION_TYPE_CALL);
+        option.setVanillaOptionParams(vanillaOptionParams.copy());
+        BarrierOptionParams barrierOptionParams = new BarrierOptionParams();
+        barrierOptionParams.setBarrierType(BaseOption.BARRIER_TYPE_OUT);
+        barrierOptionParams.setBarrierDirection(BaseOption.BARRIER_DIRECTION_DOWN);
+        barrierOptionParams.setBarrierPrice(85);
+        option.setBarrierOptionParams(barrierOptionParams);
+        SingleOptionAnalysisCalculator calculator = new SingleOptionAnalysisCalculator(option);
+        calculator.calculatePrice();
+        double price = calculator.getResult();
+        calculator.calculateAll();
+        Assert.assertEquals(0, calculator.getError().getIndex());
+        Assert.assertEquals(price, calculator.getGreeks().getPrice(), 0);
+        Assert.assertSame(option, calculator.getOption());
+        Assert.assertEquals(100, option.getUnderlying().getSpotPrice(), 0);
+        Assert.assertEquals(0.25, option.getVanillaOptionParams().getVolatility(), 0);
+        Assert.assertEquals(0.05, option.getUnderlying().getRiskFreeRate(), 0);
+        calculator.calculateGamma();
+        Assert.assertSame(option, calculator.getOption());
+    }
+
+    @Test
+    public void testMonteCarloBarrierCorrectionGreeks() {
+        BarrierOption option = new BarrierOption();
+        option.setUnderlying(createUnderlyingCase(new Spot(), 100, 0.05, 0.02));
+        createVanillaOptionParams(100, 0.3, 0.5, BaseOption.OPTION_TYPE_CALL);
+        option.setVanillaOptionParams(vanillaOptionParams.copy());
+        BarrierOptionParams barrierOptionParams = new BarrierOptionParams();
+        barrierOptionParams.setBarrierType(BaseOption.BARRIER_TYPE_OUT);
+        barrierOptionParams.setBarrierDirection(BaseOption.BARRIER_DIRECTION_DOWN);
+        barrierOptionParams.setBarrierPrice(90);
+        option.setBarrierOptionParams(barrierOptionParams);
+        SingleOptionMonteCarloCalculator calculator = new SingleOptionMonteCarloCalculator();
+        calculator.getMonteCarloParams().setNodes(20);
+        calculator.getMonteCarloParams().setPathSize(20000);
+        calculator.getMonteCarloParams().setSeed(20180615L);
+        calculator.getMonteCarloParams().setBarrierCorrection(MonteCarlo.BARRIER_CORRECTION_BROWNIAN_BRIDGE);
+        //公共随机数的宽扰动
+        double[] prices = new double[2];
+        for (int i = 0; i < 2; i++) {
+            BaseSingleOption bumpedOption = option.scenarioCopy();
+            bumpedOption.getVanillaOptionParams().setVolatility(0.29 + 0.02 * i);
+            calculator.setOption(bumpedOption);
+            calculator.calculatePrice();
+            prices[i] = calculator.getResult();
+        }
+        double wideBumpVega = (prices[1] - prices[0]) / 2;
+        calculator.setOption(option);
+        calculator.getMonteCarloParams().setGreekMethod(MonteCarlo.GREEK_METHOD_LIKELIHOOD_RATIO);
+        calculator.calculateVega();
+        Assert.assertEquals(0, calculator.getError().getIndex());
+        Assert.assertEquals(wideBumpVega, calculator.getResult(), 0.005);
+    }
 }
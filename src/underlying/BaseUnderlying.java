@@ -9,7 +9,7 @@ import java.io.Serializable;
  *
  * @author liangcy
  */
-public abstract class BaseUnderlying implements Serializable {
+public abstract class BaseUnderlying implements Serializable, Cloneable {
     private double spotPrice;
     private double riskFreeRate = 0.0;
     private double dividendRate = 0.0;
@@ -60,6 +60,26 @@ public abstract class BaseUnderlying implements Serializable {
         return getRiskFreeRate() - getDividendRate();
     }
 
+    /**
+     * @return 无风险利率变动1时持有成本的变动
+     */
+    public double getCostOfCarryRateSensitivity() {
+        return 1.0;
+    }
+
+    /**
+     * 标的参数都是数值, 浅拷贝即可; 子类有可变对象时需要覆盖;
+     *
+     * @return 和原对象互不影响的副本
+     */
+    public BaseUnderlying copy() {
+        try {
+            return (BaseUnderlying) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     @Override
     /**
      * 打印参数
@@ -35,6 +35,14 @@ public class Future extends BaseUnderlying implements Serializable {
         super.setDividendRate(riskFreeRate);
     }
 
+    /**
+     * 期货的分红率跟随无风险利率, 持有成本恒为0;
+     */
+    @Override
+    public double getCostOfCarryRateSensitivity() {
+        return 0.0;
+    }
+
     @Override
     public String toString() {
         return "Underlying type: future" + sep +
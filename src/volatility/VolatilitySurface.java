@@ -71,6 +71,24 @@ public class VolatilitySurface implements Serializable {
         }
     }
 
+    /**
+     * @return 和原对象互不影响的副本
+     */
+    public VolatilitySurface copy() {
+        VolatilitySurface surface = new VolatilitySurface();
+        if (volSurface != null) {
+            surface.volSurface = new double[volSurface.length][];
+            for (int i = 0; i < volSurface.length; i++) {
+                surface.volSurface[i] = volSurface[i].clone();
+            }
+        }
+        surface.timeList = timeList.clone();
+        surface.moneynessList = moneynessList.clone();
+        surface.interpolationMethod = interpolationMethod;
+        surface.extrapolationMethod = extrapolationMethod;
+        return surface;
+    }
+
     public double getVolatility(double moneyness, double timeRemaining) {
         return Interpolation.interp2(moneynessList, timeList, volSurface, moneyness, timeRemaining,
                 interpolationMethod, extrapolationMethod);